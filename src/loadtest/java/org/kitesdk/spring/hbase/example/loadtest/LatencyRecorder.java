@@ -0,0 +1,107 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Records the latencies and outcomes of the requests to one endpoint, and
+ * reports their percentiles.
+ */
+public class LatencyRecorder {
+
+  private final String endpoint;
+  private long[] latenciesMicros = new long[1024];
+  private int count = 0;
+  private int errors = 0;
+
+  public LatencyRecorder(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * Record a request.
+   *
+   * @param latencyMicros
+   *          The time from when the request was scheduled to be sent until its
+   *          response was read, in microseconds
+   * @param success
+   *          Whether the request succeeded
+   */
+  public synchronized void record(long latencyMicros, boolean success) {
+    if (count == latenciesMicros.length) {
+      latenciesMicros = Arrays.copyOf(latenciesMicros, count * 2);
+    }
+    latenciesMicros[count++] = latencyMicros;
+    if (!success) {
+      errors++;
+    }
+  }
+
+  /**
+   * Get the number of requests recorded.
+   *
+   * @return The number of requests
+   */
+  public synchronized int getRequests() {
+    return count;
+  }
+
+  /**
+   * Get the number of requests that failed.
+   *
+   * @return The number of failed requests
+   */
+  public synchronized int getErrors() {
+    return errors;
+  }
+
+  /**
+   * Format a report line with the throughput and latency percentiles.
+   *
+   * @param elapsedMs
+   *          The duration of the run, in ms
+   * @return The report line
+   */
+  public synchronized String report(long elapsedMs) {
+    long[] sorted = Arrays.copyOf(latenciesMicros, count);
+    Arrays.sort(sorted);
+    return String.format(
+        "%-20s %8d %6d %10.1f %10.2f %10.2f %10.2f %10.2f", endpoint, count,
+        errors, count * 1000.0 / elapsedMs, percentileMs(sorted, 0.50),
+        percentileMs(sorted, 0.99), percentileMs(sorted, 0.999),
+        count > 0 ? sorted[count - 1] / 1000.0 : 0.0);
+  }
+
+  /**
+   * Get the header line for the reports.
+   *
+   * @return The header line
+   */
+  public static String header() {
+    return String.format("%-20s %8s %6s %10s %10s %10s %10s %10s", "endpoint",
+        "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms",
+        "max ms");
+  }
+
+  private static double percentileMs(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0.0;
+    }
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1000.0;
+  }
+}
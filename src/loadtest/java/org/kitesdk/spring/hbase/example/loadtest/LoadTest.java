@@ -0,0 +1,274 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a running instance of the webapp with a mix of snapshot and read
+ * requests at a target rate, and reports throughput and latency percentiles
+ * per endpoint. Pages are served by a local StubOrigin, so the whole test runs
+ * offline.
+ *
+ * The load is an open model: requests are scheduled at fixed intervals
+ * regardless of how fast earlier ones complete, and latency is measured from
+ * when a request was scheduled, so a slow server shows up as latency rather
+ * than as a lower request rate.
+ *
+ * The test first snapshots loadtest.seed.pages pages, so reads find data, and
+ * then runs for loadtest.duration.seconds. The run fails if a seed page can't
+ * be snapshotted or if more than loadtest.max.error.rate of the requests fail.
+ * All settings are system properties, see the README.
+ *
+ * The test runs in the Maven JVM, so it must not call System.exit, and every
+ * thread it starts is stopped before main returns.
+ */
+public class LoadTest {
+
+  private final String target = System.getProperty("loadtest.target",
+      "http://localhost:8080");
+  private final double rate = Double.parseDouble(System.getProperty(
+      "loadtest.rate", "100"));
+  private final int durationSeconds = Integer.getInteger(
+      "loadtest.duration.seconds", 60);
+  private final int threads = Integer.getInteger("loadtest.threads", 200);
+  private final int seedPages = Integer.getInteger("loadtest.seed.pages", 200);
+  private final int waitForWebappSeconds = Integer.getInteger(
+      "loadtest.wait.for.webapp.seconds", 300);
+  private final String mix = System.getProperty("loadtest.mix",
+      "takeSnapshot=10,mostRecentMeta=50,mostRecentContent=20,snapshotTimestamps=20");
+  private final double maxErrorRate = Double.parseDouble(System.getProperty(
+      "loadtest.max.error.rate", "0.01"));
+
+  private final StubOrigin origin = new StubOrigin(Integer.getInteger(
+      "loadtest.origin.port", 8099), Integer.getInteger(
+      "loadtest.origin.pages", 1000), Integer.getInteger(
+      "loadtest.origin.hosts", 16), Integer.getInteger(
+      "loadtest.origin.page.size", 20000), Long.getLong(
+      "loadtest.origin.latency.ms", 50L));
+
+  private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<String, LatencyRecorder>();
+  private final List<String> schedule = new ArrayList<String>();
+
+  public static void main(String[] args) throws Exception {
+    new LoadTest().run();
+  }
+
+  private void run() throws Exception {
+    parseMix();
+    System.setProperty("http.maxConnections", Integer.toString(threads));
+    origin.start();
+    try {
+      waitForWebapp();
+      seed();
+      drive();
+    } finally {
+      origin.stop();
+    }
+  }
+
+  /**
+   * Expand the mix into a schedule of 100 endpoints, in which each endpoint
+   * appears in proportion to its weight.
+   */
+  private void parseMix() {
+    Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+    int total = 0;
+    for (String entry : mix.split(",")) {
+      String[] parts = entry.trim().split("=");
+      int weight = Integer.parseInt(parts[1].trim());
+      weights.put(parts[0].trim(), weight);
+      total += weight;
+    }
+    for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+      recorders.put(entry.getKey(), new LatencyRecorder(entry.getKey()));
+      int slots = Math.max(1, Math.round(100f * entry.getValue() / total));
+      for (int i = 0; i < slots; i++) {
+        schedule.add(entry.getKey());
+      }
+    }
+  }
+
+  private void waitForWebapp() throws InterruptedException {
+    long deadline = System.currentTimeMillis()
+        + TimeUnit.SECONDS.toMillis(waitForWebappSeconds);
+    System.out.println("Waiting for " + target);
+    while (System.currentTimeMillis() < deadline) {
+      try {
+        if (send("GET", target + "/home") == 200) {
+          return;
+        }
+      } catch (IOException e) {
+        // not up yet
+      }
+      Thread.sleep(1000);
+    }
+    throw new IllegalStateException(target + " didn't come up within "
+        + waitForWebappSeconds + "s");
+  }
+
+  /**
+   * Snapshot the pages the reads target. Snapshots that are held back by the
+   * per host politeness limits are retried.
+   */
+  private void seed() throws InterruptedException {
+    System.out.println("Seeding " + seedPages + " snapshots");
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    final AtomicInteger failed = new AtomicInteger();
+    for (int i = 0; i < seedPages; i++) {
+      final int page = i;
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (int attempt = 0; attempt < 10; attempt++) {
+            try {
+              int status = send("POST", target + "/takeSnapshot?url="
+                  + encode(origin.getUrl(page)));
+              if (status == 200) {
+                return;
+              }
+              Thread.sleep(1000);
+            } catch (IOException e) {
+              // retried below
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              return;
+            }
+          }
+          failed.incrementAndGet();
+        }
+      });
+    }
+    pool.shutdown();
+    if (!pool.awaitTermination(1, TimeUnit.HOURS)) {
+      pool.shutdownNow();
+      throw new IllegalStateException("Seeding didn't finish within 1h");
+    }
+    if (failed.get() > 0) {
+      throw new IllegalStateException(failed.get() + " of " + seedPages
+          + " pages couldn't be seeded");
+    }
+  }
+
+  private void drive() throws InterruptedException {
+    System.out.println("Running " + mix + " at " + rate + " req/s for "
+        + durationSeconds + "s");
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    final Random random = new Random();
+    long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+    for (long i = 0;; i++) {
+      final long scheduledAt = start + i * intervalNanos;
+      if (scheduledAt >= end) {
+        break;
+      }
+      long sleepNanos = scheduledAt - System.nanoTime();
+      if (sleepNanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+      }
+      final String endpoint = schedule.get(random.nextInt(schedule.size()));
+      final int page = endpoint.equals("takeSnapshot") ? random.nextInt(origin
+          .getPages()) : random.nextInt(Math.max(1, seedPages));
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          boolean success;
+          try {
+            String method = endpoint.equals("takeSnapshot") ? "POST" : "GET";
+            success = send(method, target + "/" + endpoint + "?url="
+                + encode(origin.getUrl(page))) == 200;
+          } catch (IOException e) {
+            success = false;
+          }
+          recorders.get(endpoint).record(
+              (System.nanoTime() - scheduledAt) / 1000, success);
+        }
+      });
+    }
+    pool.shutdown();
+    if (!pool.awaitTermination(5, TimeUnit.MINUTES)) {
+      pool.shutdownNow();
+      throw new IllegalStateException(
+          "Requests were still in flight 5 minutes after the run");
+    }
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    System.out.println();
+    System.out.println(LatencyRecorder.header());
+    int requests = 0;
+    int errors = 0;
+    for (LatencyRecorder recorder : recorders.values()) {
+      System.out.println(recorder.report(elapsedMs));
+      requests += recorder.getRequests();
+      errors += recorder.getErrors();
+    }
+    if (errors > requests * maxErrorRate) {
+      throw new IllegalStateException(String.format(
+          "%d of %d requests failed, more than the max error rate of %s",
+          errors, requests, maxErrorRate));
+    }
+  }
+
+  /**
+   * Send a request and read the whole response, so the connection can be
+   * reused.
+   *
+   * @return The response status
+   */
+  private static int send(String method, String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url)
+        .openConnection();
+    connection.setRequestMethod(method);
+    connection.setConnectTimeout(30000);
+    connection.setReadTimeout(120000);
+    if (method.equals("POST")) {
+      connection.setDoOutput(true);
+      OutputStream out = connection.getOutputStream();
+      out.close();
+    }
+    int status = connection.getResponseCode();
+    InputStream in = status < 400 ? connection.getInputStream() : connection
+        .getErrorStream();
+    if (in != null) {
+      byte[] buffer = new byte[8192];
+      while (in.read(buffer) >= 0) {
+        // drain
+      }
+      in.close();
+    }
+    return status;
+  }
+
+  private static String encode(String value) throws IOException {
+    return URLEncoder.encode(value, "UTF-8");
+  }
+}
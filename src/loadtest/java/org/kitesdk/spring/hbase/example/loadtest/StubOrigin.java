@@ -0,0 +1,188 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP origin that serves a generated corpus of HTML pages with
+ * injected latency, so snapshots can be load tested without network access.
+ *
+ * Page i is served at /page/i.html. The pages are spread over several loopback
+ * hosts (127.0.0.1, 127.0.0.2, ...) so per host fetch politeness doesn't
+ * serialize the whole corpus behind one host. Every loopback address reaches
+ * the server on Linux; elsewhere, use a single host.
+ */
+public class StubOrigin {
+
+  private static final String[] WORDS = { "kite", "hbase", "spring",
+      "snapshot", "page", "data", "region", "server", "cluster", "schema",
+      "record", "table", "column", "family", "fetch", "crawl", "index",
+      "latency", "request", "response" };
+
+  private final int port;
+  private final int pages;
+  private final int hosts;
+  private final int pageSize;
+  private final long meanLatencyMs;
+  private final Random random = new Random();
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * Construct a StubOrigin
+   *
+   * @param port
+   *          The port to listen on
+   * @param pages
+   *          The number of pages in the corpus
+   * @param hosts
+   *          The number of loopback hosts the pages are spread over
+   * @param pageSize
+   *          The approximate size of each page, in bytes
+   * @param meanLatencyMs
+   *          The mean of the exponentially distributed latency injected into
+   *          each response
+   */
+  public StubOrigin(int port, int pages, int hosts, int pageSize,
+      long meanLatencyMs) {
+    this.port = port;
+    this.pages = pages;
+    this.hosts = hosts;
+    this.pageSize = pageSize;
+    this.meanLatencyMs = meanLatencyMs;
+  }
+
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(port), 1024);
+    // responses sleep to inject latency, so don't bound the threads
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          serve(exchange);
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Get the URL of a page of the corpus.
+   *
+   * @param page
+   *          The page number
+   * @return The URL
+   */
+  public String getUrl(int page) {
+    return "http://127.0.0." + (1 + page % hosts) + ":" + port + "/page/"
+        + page + ".html";
+  }
+
+  public int getPages() {
+    return pages;
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    int page = -1;
+    if (path.startsWith("/page/") && path.endsWith(".html")) {
+      try {
+        page = Integer.parseInt(path.substring("/page/".length(),
+            path.length() - ".html".length()));
+      } catch (NumberFormatException e) {
+        page = -1;
+      }
+    }
+    if (page < 0 || page >= pages) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+
+    injectLatency();
+    byte[] body = renderPage(page).getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type",
+        "text/html; charset=UTF-8");
+    exchange.sendResponseHeaders(200, body.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(body);
+    out.close();
+  }
+
+  private void injectLatency() {
+    if (meanLatencyMs <= 0) {
+      return;
+    }
+    double u;
+    synchronized (random) {
+      u = random.nextDouble();
+    }
+    long latencyMs = (long) (-meanLatencyMs * Math.log(1 - u));
+    try {
+      Thread.sleep(latencyMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Render a page. Pages are deterministic, except for a timestamp that makes
+   * successive snapshots differ slightly, like real pages with ads or clocks.
+   */
+  private String renderPage(int page) {
+    Random pageRandom = new Random(page);
+    StringBuilder html = new StringBuilder(pageSize + 512);
+    html.append("<html><head><title>Page ").append(page).append("</title>");
+    html.append("<meta name=\"description\" content=\"Load test page ")
+        .append(page).append("\">");
+    html.append("<meta name=\"keywords\" content=\"")
+        .append(WORDS[page % WORDS.length]).append(", loadtest\">");
+    html.append("</head><body><p>Rendered at ")
+        .append(System.currentTimeMillis()).append("</p>");
+    for (int i = 0; i < 10; i++) {
+      int link = pageRandom.nextInt(pages);
+      html.append("<a href=\"").append(getUrl(link)).append("\">Page ")
+          .append(link).append("</a> ");
+    }
+    html.append("<p>");
+    while (html.length() < pageSize) {
+      html.append(WORDS[pageRandom.nextInt(WORDS.length)]).append(' ');
+    }
+    html.append("</p></body></html>");
+    return html.toString();
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.controller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kitesdk.spring.hbase.example.model.frontend.ExecutorPoolStats;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * A bounded pool that asynchronous requests are processed on, with its own
+ * request timeout. Requests that time out complete with a TimeoutException.
+ *
+ * The work is submitted to the pool before the request handler returns, so a
+ * full pool rejects the request right away with a RejectedExecutionException
+ * thrown from the handler. Spring's WebAsyncTask submits only once async
+ * processing has started, and leaves a rejected request hanging until it
+ * times out.
+ */
+class AsyncPool {
+
+  private final String name;
+  private final ThreadPoolTaskExecutor executor;
+  private final long timeoutMs;
+  private final AtomicLong timeouts = new AtomicLong();
+
+  AsyncPool(String name, ThreadPoolTaskExecutor executor, long timeoutMs) {
+    this.name = name;
+    this.executor = executor;
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Submit a request's work to this pool.
+   *
+   * @param callable
+   *          The work to run
+   * @return The DeferredResult to return from the request handler, which
+   *         completes with the work's result or exception
+   * @throws java.util.concurrent.RejectedExecutionException
+   *           If the pool's queue is full
+   */
+  <T> DeferredResult<T> submit(final Callable<T> callable) {
+    final DeferredResult<T> result = new DeferredResult<T>(timeoutMs,
+        new TimeoutException("Request timed out on the " + name + " pool"));
+    final Future<?> future = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          result.setResult(callable.call());
+        } catch (Exception e) {
+          result.setErrorResult(e);
+        }
+      }
+    });
+    result.onTimeout(new Runnable() {
+      @Override
+      public void run() {
+        timeouts.incrementAndGet();
+        // don't start work nobody is waiting for anymore
+        future.cancel(false);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Get a point in time view of the pool.
+   *
+   * @return The ExecutorPoolStats
+   */
+  ExecutorPoolStats getStats() {
+    ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+    ExecutorPoolStats stats = new ExecutorPoolStats();
+    stats.setName(name);
+    stats.setActiveThreads(pool.getActiveCount());
+    stats.setPoolSize(pool.getPoolSize());
+    stats.setMaxPoolSize(pool.getMaximumPoolSize());
+    stats.setQueueDepth(pool.getQueue().size());
+    stats.setQueueRemainingCapacity(pool.getQueue().remainingCapacity());
+    stats.setCompletedTasks(pool.getCompletedTaskCount());
+    stats.setTimeouts(timeouts.get());
+    stats.setTimeoutMs(timeoutMs);
+    return stats;
+  }
+}
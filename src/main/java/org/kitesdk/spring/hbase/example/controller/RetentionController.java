@@ -0,0 +1,40 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.controller;
+
+import java.util.List;
+
+import org.kitesdk.spring.hbase.example.retention.RetentionReport;
+import org.kitesdk.spring.hbase.example.retention.SnapshotRetentionJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+@RequestMapping("")
+public class RetentionController {
+
+  @Autowired
+  private SnapshotRetentionJob snapshotRetentionJob;
+
+  @RequestMapping(value = "/retentionReports", method = RequestMethod.GET)
+  @ResponseBody
+  public List<RetentionReport> getRetentionReports() {
+    return snapshotRetentionJob.getReports();
+  }
+}
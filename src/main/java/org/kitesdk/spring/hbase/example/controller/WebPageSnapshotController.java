@@ -16,14 +16,32 @@
 package org.kitesdk.spring.hbase.example.controller;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
 
 import org.jsoup.HttpStatusException;
-import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotContent;
+import org.kitesdk.spring.hbase.example.fetch.RetryableFetchException;
+import org.kitesdk.spring.hbase.example.model.frontend.ExecutorPoolStats;
+import org.kitesdk.spring.hbase.example.model.frontend.HostStats;
+import org.kitesdk.spring.hbase.example.model.frontend.SimilarPage;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotBatchView;
 import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotMeta;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotView;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotView.Part;
 import org.kitesdk.spring.hbase.example.service.WebPageSnapshotService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -31,8 +49,19 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.ModelAndView;
 
+/**
+ * Controller for WebPageSnapshot operations.
+ *
+ * Requests are processed asynchronously, so they don't hold a servlet
+ * container thread while they wait on slow pages or slow regions. Snapshots,
+ * which fetch pages from the web, run on the fetch pool, and reads run on the
+ * storage pool, so a backlog of slow fetches can't starve metadata reads.
+ * Requests are rejected with a 503 as soon as their pool's queue is full.
+ */
 @Controller
 @RequestMapping("")
 public class WebPageSnapshotController {
@@ -40,6 +69,29 @@ public class WebPageSnapshotController {
   @Autowired
   private WebPageSnapshotService webPageSnapshotService;
 
+  @Autowired
+  @Qualifier("fetchExecutor")
+  private ThreadPoolTaskExecutor fetchExecutor;
+
+  @Autowired
+  @Qualifier("storageExecutor")
+  private ThreadPoolTaskExecutor storageExecutor;
+
+  @Value("${async.fetch.timeout.ms}")
+  private long fetchTimeoutMs;
+
+  @Value("${async.storage.timeout.ms}")
+  private long storageTimeoutMs;
+
+  private AsyncPool fetchPool;
+  private AsyncPool storagePool;
+
+  @PostConstruct
+  public void initPools() {
+    fetchPool = new AsyncPool("fetch", fetchExecutor, fetchTimeoutMs);
+    storagePool = new AsyncPool("storage", storageExecutor, storageTimeoutMs);
+  }
+
   @RequestMapping(value = "/home", method = RequestMethod.GET)
   public ModelAndView getHome() {
     ModelAndView mav = new ModelAndView();
@@ -49,46 +101,200 @@ public class WebPageSnapshotController {
 
   @RequestMapping(value = "/takeSnapshot", method = RequestMethod.POST)
   @ResponseBody
-  public WebPageSnapshotMeta takeSnapshot(@RequestParam("url") String url)
-      throws IOException {
-    return webPageSnapshotService.takeSnapshot(url);
+  public DeferredResult<WebPageSnapshotMeta> takeSnapshot(
+      @RequestParam("url") final String url) {
+    return fetchPool.submit(new Callable<WebPageSnapshotMeta>() {
+      @Override
+      public WebPageSnapshotMeta call() throws IOException {
+        return webPageSnapshotService.takeSnapshot(url);
+      }
+    });
   }
 
   @RequestMapping(value = "/meta", method = RequestMethod.GET)
   @ResponseBody
-  public WebPageSnapshotMeta getMostRecentMeta(@RequestParam("url") String url,
-      @RequestParam("ts") long ts) {
-    return webPageSnapshotService.getWebPageSnapshotMeta(url, ts);
+  public DeferredResult<WebPageSnapshotView> getMostRecentMeta(
+      @RequestParam("url") final String url, @RequestParam("ts") final long ts) {
+    return storagePool.submit(new Callable<WebPageSnapshotView>() {
+      @Override
+      public WebPageSnapshotView call() {
+        return WebPageSnapshotView.meta(webPageSnapshotService
+            .getWebPageSnapshot(url, ts));
+      }
+    });
+  }
+
+  @RequestMapping(value = "/metaAsOf", method = RequestMethod.GET)
+  @ResponseBody
+  public DeferredResult<WebPageSnapshotBatchView> getMetaAsOf(
+      WebRequest request, @RequestParam("ts") final long ts) {
+    final List<String> urls = getUrls(request);
+    return storagePool.submit(new Callable<WebPageSnapshotBatchView>() {
+      @Override
+      public WebPageSnapshotBatchView call() {
+        return new WebPageSnapshotBatchView(
+            webPageSnapshotService.getWebPageSnapshots(urls, ts), Part.META);
+      }
+    });
   }
 
   @RequestMapping(value = "/mostRecentMeta", method = RequestMethod.GET)
   @ResponseBody
-  public WebPageSnapshotMeta getMostRecentMeta(@RequestParam("url") String url) {
-    return webPageSnapshotService.getWebPageSnapshotMeta(url);
+  public DeferredResult<WebPageSnapshotView> getMostRecentMeta(
+      @RequestParam("url") final String url) {
+    return storagePool.submit(new Callable<WebPageSnapshotView>() {
+      @Override
+      public WebPageSnapshotView call() {
+        return WebPageSnapshotView.meta(webPageSnapshotService
+            .getMostRecentWebPageSnapshot(url));
+      }
+    });
+  }
+
+  @RequestMapping(value = "/batchMostRecentMeta", method = {
+      RequestMethod.GET, RequestMethod.POST })
+  @ResponseBody
+  public DeferredResult<WebPageSnapshotBatchView> getBatchMostRecentMeta(
+      WebRequest request) {
+    final List<String> urls = getUrls(request);
+    return storagePool.submit(new Callable<WebPageSnapshotBatchView>() {
+      @Override
+      public WebPageSnapshotBatchView call() {
+        return new WebPageSnapshotBatchView(
+            webPageSnapshotService.getMostRecentWebPageSnapshots(urls),
+            Part.META);
+      }
+    });
   }
 
   @RequestMapping(value = "/content", method = RequestMethod.GET)
   @ResponseBody
-  public WebPageSnapshotContent getMostRecentContent(
-      @RequestParam("url") String url, @RequestParam("ts") long ts) {
-    return webPageSnapshotService.getWebPageSnapshotContent(url, ts);
+  public DeferredResult<WebPageSnapshotView> getMostRecentContent(
+      @RequestParam("url") final String url, @RequestParam("ts") final long ts) {
+    return storagePool.submit(new Callable<WebPageSnapshotView>() {
+      @Override
+      public WebPageSnapshotView call() {
+        return WebPageSnapshotView.content(webPageSnapshotService
+            .getWebPageSnapshot(url, ts));
+      }
+    });
   }
 
   @RequestMapping(value = "/mostRecentContent", method = RequestMethod.GET)
   @ResponseBody
-  public WebPageSnapshotContent getMostRecentContent(
-      @RequestParam("url") String url) {
-    return webPageSnapshotService.getWebPageSnapshotContent(url);
+  public DeferredResult<WebPageSnapshotView> getMostRecentContent(
+      @RequestParam("url") final String url) {
+    return storagePool.submit(new Callable<WebPageSnapshotView>() {
+      @Override
+      public WebPageSnapshotView call() {
+        return WebPageSnapshotView.content(webPageSnapshotService
+            .getMostRecentWebPageSnapshot(url));
+      }
+    });
+  }
+
+  @RequestMapping(value = "/batchMostRecentContent", method = {
+      RequestMethod.GET, RequestMethod.POST })
+  @ResponseBody
+  public DeferredResult<WebPageSnapshotBatchView> getBatchMostRecentContent(
+      WebRequest request) {
+    final List<String> urls = getUrls(request);
+    return storagePool.submit(new Callable<WebPageSnapshotBatchView>() {
+      @Override
+      public WebPageSnapshotBatchView call() {
+        return new WebPageSnapshotBatchView(
+            webPageSnapshotService.getMostRecentWebPageSnapshots(urls),
+            Part.CONTENT);
+      }
+    });
   }
 
   @RequestMapping(value = "/snapshotTimestamps", method = RequestMethod.GET)
   @ResponseBody
-  public List<Long> getSnapshotTimestamps(@RequestParam("url") String url) {
-    return webPageSnapshotService.getSnapshotTimestamps(url);
+  public DeferredResult<List<Long>> getSnapshotTimestamps(
+      @RequestParam("url") final String url) {
+    return storagePool.submit(new Callable<List<Long>>() {
+      @Override
+      public List<Long> call() {
+        return webPageSnapshotService.getSnapshotTimestamps(url);
+      }
+    });
+  }
+
+  @RequestMapping(value = "/similar", method = RequestMethod.GET)
+  @ResponseBody
+  public DeferredResult<List<SimilarPage>> getSimilarPages(
+      @RequestParam("url") final String url) {
+    return storagePool.submit(new Callable<List<SimilarPage>>() {
+      @Override
+      public List<SimilarPage> call() {
+        return webPageSnapshotService.getSimilarPages(url);
+      }
+    });
+  }
+
+  @RequestMapping(value = "/hostStats", method = RequestMethod.GET)
+  @ResponseBody
+  public DeferredResult<List<HostStats>> getHostStats(
+      @RequestParam("host") final String host,
+      @RequestParam(value = "since", required = false) final Long since) {
+    return storagePool.submit(new Callable<List<HostStats>>() {
+      @Override
+      public List<HostStats> call() {
+        if (since == null) {
+          return webPageSnapshotService.getHostStats(host);
+        }
+        return webPageSnapshotService.getHostStats(host, since);
+      }
+    });
+  }
+
+  @RequestMapping(value = "/poolStats", method = RequestMethod.GET)
+  @ResponseBody
+  public List<ExecutorPoolStats> getPoolStats() {
+    List<ExecutorPoolStats> stats = new ArrayList<ExecutorPoolStats>();
+    stats.add(fetchPool.getStats());
+    stats.add(storagePool.getStats());
+    return stats;
+  }
+
+  /**
+   * Get every url parameter of a request. A List or array @RequestParam would
+   * split a single parameter on commas, which URLs can contain.
+   *
+   * @param request
+   *          The request
+   * @return The urls, one per parameter
+   */
+  private static List<String> getUrls(WebRequest request) {
+    String[] urls = request.getParameterValues("url");
+    if (urls == null) {
+      throw new IllegalArgumentException("Missing url parameter");
+    }
+    return Arrays.asList(urls);
   }
 
   @ResponseStatus(value = HttpStatus.NOT_FOUND, reason = "Error fetching snapshot")
   @ExceptionHandler(HttpStatusException.class)
   public void httpStatusExceptionHandler() {
   }
+
+  @ExceptionHandler(RetryableFetchException.class)
+  public ResponseEntity<String> retryableFetchExceptionHandler(
+      RetryableFetchException e) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set("Retry-After", Long.toString(e.getRetryAfterSeconds()));
+    return new ResponseEntity<String>(e.getMessage(), headers,
+        HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
+  @ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid request")
+  @ExceptionHandler(IllegalArgumentException.class)
+  public void illegalArgumentExceptionHandler() {
+  }
+
+  @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "Server busy")
+  @ExceptionHandler({ TimeoutException.class, RejectedExecutionException.class })
+  public void busyExceptionHandler() {
+  }
 }
@@ -0,0 +1,457 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.fetch;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Connection.Response;
+import org.jsoup.Jsoup;
+import org.kitesdk.spring.hbase.example.helper.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules outbound fetches so no single host is hit too hard, while fetches
+ * from different hosts proceed independently.
+ *
+ * Every host gets a token bucket that limits its request rate, and a cap on
+ * its concurrent fetches. The rate is lowered to honor the Crawl-delay of the
+ * host's robots.txt, which is fetched once and cached for robotsCacheMs.
+ *
+ * When a host answers with a 429 or 503 it's backed off: no fetches are sent
+ * to it until its Retry-After has passed, or an exponentially growing delay if
+ * it didn't send one, and its rate is halved. The rate recovers gradually as
+ * fetches succeed again.
+ *
+ * Fetches never wait longer than maxWaitMs for their host. If they'd have to,
+ * a RetryableFetchException is thrown instead, so a slow or throttling host
+ * can't tie up the fetch threads that other hosts need.
+ */
+public class FetchScheduler {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(FetchScheduler.class);
+
+  private static final int MAX_PENALTY = 64;
+  private static final int EVICTION_BATCH = 16;
+
+  private double requestsPerSecond = 2;
+  private int burst = 4;
+  private int maxConcurrentPerHost = 2;
+  private long maxWaitMs = TimeUnit.SECONDS.toMillis(10);
+  private long initialBackoffMs = TimeUnit.SECONDS.toMillis(5);
+  private long maxBackoffMs = TimeUnit.MINUTES.toMillis(10);
+  private long robotsCacheMs = TimeUnit.HOURS.toMillis(1);
+  private int robotsTimeoutMs = 5000;
+  private int maxTrackedHosts = 10000;
+
+  // access ordered, so the least recently fetched hosts are evicted first
+  private final Map<String, HostState> hosts = new LinkedHashMap<String, HostState>(
+      16, 0.75f, true);
+  private final SingleFlight<String, Long> robotsFetches = new SingleFlight<String, Long>();
+
+  public void setRequestsPerSecond(double requestsPerSecond) {
+    this.requestsPerSecond = requestsPerSecond;
+  }
+
+  public void setBurst(int burst) {
+    this.burst = burst;
+  }
+
+  public void setMaxConcurrentPerHost(int maxConcurrentPerHost) {
+    this.maxConcurrentPerHost = maxConcurrentPerHost;
+  }
+
+  public void setMaxWaitMs(long maxWaitMs) {
+    this.maxWaitMs = maxWaitMs;
+  }
+
+  public void setInitialBackoffMs(long initialBackoffMs) {
+    this.initialBackoffMs = initialBackoffMs;
+  }
+
+  public void setMaxBackoffMs(long maxBackoffMs) {
+    this.maxBackoffMs = maxBackoffMs;
+  }
+
+  public void setRobotsCacheMs(long robotsCacheMs) {
+    this.robotsCacheMs = robotsCacheMs;
+  }
+
+  public void setRobotsTimeoutMs(int robotsTimeoutMs) {
+    this.robotsTimeoutMs = robotsTimeoutMs;
+  }
+
+  public void setMaxTrackedHosts(int maxTrackedHosts) {
+    this.maxTrackedHosts = maxTrackedHosts;
+  }
+
+  /**
+   * Wait until a fetch of an URL may be sent to its host. The returned permit
+   * must be completed with the response status, if there is one, and then
+   * released.
+   *
+   * @param url
+   *          The URL that will be fetched
+   * @return The permit for the fetch
+   * @throws RetryableFetchException
+   *           If the fetch would have to wait longer than maxWaitMs
+   * @throws IOException
+   *           If the URL is invalid
+   */
+  public Permit acquire(String url) throws IOException {
+    URL parsedUrl;
+    try {
+      parsedUrl = new URL(url);
+    } catch (MalformedURLException e) {
+      throw new IOException("Invalid URL " + url, e);
+    }
+    String origin = parsedUrl.getProtocol() + "://"
+        + parsedUrl.getAuthority().toLowerCase(Locale.ENGLISH);
+    HostState host = getHostState(origin);
+    long deadline = System.currentTimeMillis() + maxWaitMs;
+
+    try {
+      if (!host.concurrency.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+        throw new RetryableFetchException("Too many concurrent fetches from "
+            + origin, toRetryAfterSeconds(maxWaitMs));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting to fetch " + url, e);
+    }
+
+    boolean acquired = false;
+    try {
+      long crawlDelayMs = getCrawlDelayMs(host, origin);
+      long waitMs = host.reserve(System.currentTimeMillis(), crawlDelayMs,
+          deadline);
+      if (waitMs < 0) {
+        throw new RetryableFetchException("Fetches from " + origin
+            + " are being held back", toRetryAfterSeconds(-waitMs));
+      }
+      if (waitMs > 0) {
+        try {
+          Thread.sleep(waitMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted waiting to fetch " + url, e);
+        }
+      }
+      acquired = true;
+      return new Permit(host, origin);
+    } finally {
+      if (!acquired) {
+        host.concurrency.release();
+      }
+    }
+  }
+
+  HostState getHostState(String origin) {
+    synchronized (hosts) {
+      HostState host = hosts.get(origin);
+      if (host == null) {
+        host = new HostState();
+        hosts.put(origin, host);
+        if (hosts.size() > maxTrackedHosts) {
+          evictIdleHosts(origin);
+        }
+      }
+      return host;
+    }
+  }
+
+  /**
+   * Get the number of hosts whose scheduling state is tracked.
+   *
+   * @return The number of hosts
+   */
+  int getTrackedHosts() {
+    synchronized (hosts) {
+      return hosts.size();
+    }
+  }
+
+  /**
+   * Forget the least recently fetched hosts that have no fetches in flight and
+   * aren't backed off, so the number of tracked hosts stays bounded. At most
+   * EVICTION_BATCH hosts are checked per call, and the ones that can't be
+   * evicted yet are moved to the back, so the cost per new host is constant
+   * no matter how many hosts are tracked. Must hold the hosts lock.
+   *
+   * @param newOrigin
+   *          The origin of the host that was just added, which is kept
+   */
+  private void evictIdleHosts(String newOrigin) {
+    long now = System.currentTimeMillis();
+    List<String> busy = new ArrayList<String>();
+    Iterator<Entry<String, HostState>> it = hosts.entrySet().iterator();
+    for (int i = 0; i < EVICTION_BATCH && it.hasNext()
+        && hosts.size() > maxTrackedHosts; i++) {
+      Entry<String, HostState> entry = it.next();
+      if (entry.getKey().equals(newOrigin)) {
+        continue;
+      }
+      if (entry.getValue().isIdle(now, maxConcurrentPerHost)) {
+        it.remove();
+      } else {
+        busy.add(entry.getKey());
+      }
+    }
+    for (String origin : busy) {
+      hosts.get(origin);
+    }
+  }
+
+  /**
+   * Get the Crawl-delay of a host, fetching its robots.txt if it isn't cached.
+   * Concurrent fetches of a new host share a single robots.txt fetch.
+   */
+  private long getCrawlDelayMs(final HostState host, final String origin)
+      throws IOException {
+    if (host.robotsCheckedAt + robotsCacheMs > System.currentTimeMillis()) {
+      return host.crawlDelayMs;
+    }
+    try {
+      return robotsFetches.execute(origin, new Callable<Long>() {
+        @Override
+        public Long call() {
+          long crawlDelayMs = fetchCrawlDelayMs(origin);
+          host.crawlDelayMs = crawlDelayMs;
+          host.robotsCheckedAt = System.currentTimeMillis();
+          return crawlDelayMs;
+        }
+      });
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  private long fetchCrawlDelayMs(String origin) {
+    try {
+      Response response = Jsoup.connect(origin + "/robots.txt")
+          .timeout(robotsTimeoutMs).ignoreContentType(true)
+          .ignoreHttpErrors(true).execute();
+      if (response.statusCode() != 200) {
+        return 0L;
+      }
+      return parseCrawlDelayMs(response.body());
+    } catch (IOException e) {
+      LOG.debug("Couldn't fetch robots.txt of {}: {}", origin, e.getMessage());
+      return 0L;
+    }
+  }
+
+  /**
+   * Parse the Crawl-delay of the catch all user agent group out of a
+   * robots.txt.
+   */
+  static long parseCrawlDelayMs(String robots) {
+    boolean inCatchAllGroup = false;
+    boolean lastLineWasUserAgent = false;
+    for (String line : robots.split("\r?\n|\r")) {
+      int comment = line.indexOf('#');
+      if (comment >= 0) {
+        line = line.substring(0, comment);
+      }
+      int colon = line.indexOf(':');
+      if (colon < 0) {
+        continue;
+      }
+      String field = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+      String value = line.substring(colon + 1).trim();
+      if (field.equals("user-agent")) {
+        // consecutive user-agent lines share a group
+        inCatchAllGroup = (lastLineWasUserAgent && inCatchAllGroup)
+            || value.equals("*");
+        lastLineWasUserAgent = true;
+        continue;
+      }
+      lastLineWasUserAgent = false;
+      if (inCatchAllGroup && field.equals("crawl-delay")) {
+        try {
+          return (long) (Double.parseDouble(value) * 1000);
+        } catch (NumberFormatException e) {
+          return 0L;
+        }
+      }
+    }
+    return 0L;
+  }
+
+  private static long toRetryAfterSeconds(long ms) {
+    return Math.max(1L, (ms + 999) / 1000);
+  }
+
+  /**
+   * Parse a Retry-After header, which is either a number of seconds or an HTTP
+   * date.
+   *
+   * @return The delay in ms, or -1 if there's no valid header
+   */
+  static long parseRetryAfterMs(String retryAfter) {
+    if (retryAfter == null) {
+      return -1L;
+    }
+    retryAfter = retryAfter.trim();
+    try {
+      return Math.max(0L, Long.parseLong(retryAfter) * 1000);
+    } catch (NumberFormatException e) {
+      // not a number of seconds, try an HTTP date
+    }
+    try {
+      SimpleDateFormat format = new SimpleDateFormat(
+          "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+      return Math.max(0L, format.parse(retryAfter).getTime()
+          - System.currentTimeMillis());
+    } catch (ParseException e) {
+      return -1L;
+    }
+  }
+
+  /**
+   * A permit to send one fetch to a host.
+   */
+  public class Permit {
+
+    private final HostState host;
+    private final String origin;
+    private boolean released = false;
+
+    private Permit(HostState host, String origin) {
+      this.host = host;
+      this.origin = origin;
+    }
+
+    /**
+     * Report the status of the fetch, which adapts the rate of its host.
+     *
+     * @param statusCode
+     *          The HTTP status code of the response
+     * @param retryAfter
+     *          The Retry-After header of the response, or null
+     * @return The number of seconds the host is backed off for, or 0 if it
+     *         wasn't backed off
+     */
+    public long complete(int statusCode, String retryAfter) {
+      if (statusCode == 429 || statusCode == 503) {
+        long backoffMs = host.backOff(System.currentTimeMillis(),
+            parseRetryAfterMs(retryAfter), initialBackoffMs, maxBackoffMs);
+        LOG.info("Backing off {} for {} ms after a {}", new Object[] { origin,
+            backoffMs, statusCode });
+        return toRetryAfterSeconds(backoffMs);
+      }
+      if (statusCode < 500) {
+        host.recover();
+      }
+      return 0L;
+    }
+
+    /**
+     * Release the permit, letting the next fetch of the host proceed.
+     */
+    public void release() {
+      if (!released) {
+        released = true;
+        host.concurrency.release();
+      }
+    }
+  }
+
+  /**
+   * The scheduling state of a single host.
+   */
+  class HostState {
+
+    private final Semaphore concurrency = new Semaphore(maxConcurrentPerHost);
+
+    private volatile long crawlDelayMs = 0L;
+    private volatile long robotsCheckedAt = 0L;
+
+    private double tokens = burst;
+    private long lastRefill = System.currentTimeMillis();
+    private long backoffUntil = 0L;
+    private long lastBackoffMs = 0L;
+    private double penalty = 1;
+
+    /**
+     * Take a token, waiting for one to be refilled and for any backoff to
+     * pass.
+     *
+     * @return The number of ms to wait before fetching, or the negated number
+     *         of ms until a fetch is possible if that's past the deadline, in
+     *         which case no token is taken.
+     */
+    synchronized long reserve(long now, long crawlDelayMs, long deadline) {
+      double rate = requestsPerSecond / penalty;
+      double capacity = burst;
+      if (crawlDelayMs > 0) {
+        rate = Math.min(rate, 1000.0 / crawlDelayMs);
+        capacity = 1;
+      }
+      tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1000);
+      lastRefill = now;
+
+      long waitMs = Math.max(0L, backoffUntil - now);
+      if (tokens < 1) {
+        waitMs = Math.max(waitMs, (long) Math.ceil((1 - tokens) * 1000 / rate));
+      }
+      if (now + waitMs > deadline) {
+        return -Math.max(1L, waitMs);
+      }
+      tokens -= 1;
+      return waitMs;
+    }
+
+    synchronized long backOff(long now, long retryAfterMs,
+        long initialBackoffMs, long maxBackoffMs) {
+      penalty = Math.min(MAX_PENALTY, penalty * 2);
+      long backoffMs = retryAfterMs >= 0 ? retryAfterMs : Math.max(
+          initialBackoffMs, lastBackoffMs * 2);
+      backoffMs = Math.min(backoffMs, maxBackoffMs);
+      lastBackoffMs = backoffMs;
+      backoffUntil = Math.max(backoffUntil, now + backoffMs);
+      tokens = Math.min(tokens, 0);
+      return backoffMs;
+    }
+
+    synchronized void recover() {
+      penalty = Math.max(1, penalty * 0.9);
+      lastBackoffMs = 0L;
+    }
+
+    synchronized boolean isIdle(long now, int maxConcurrent) {
+      return concurrency.availablePermits() == maxConcurrent
+          && backoffUntil < now && penalty == 1;
+    }
+  }
+}
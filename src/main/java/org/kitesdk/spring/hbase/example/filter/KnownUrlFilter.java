@@ -0,0 +1,410 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.kitesdk.spring.hbase.example.helper.Throttle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in memory Bloom filter of every URL that has a snapshot or a redirect, so
+ * reads of URLs that were never snapshotted can be answered without touching
+ * HBase. The filter can have false positives, which just cost the lookup it
+ * would have cost anyway, but never false negatives.
+ *
+ * The filter only learns about URLs written by this process, so it must only
+ * be enabled when this process is the only writer of the snapshot and
+ * redirect tables: a single webapp instance, with archives imported through
+ * it. With several writers, URLs written by the others would be reported as
+ * unknown, and their reads would return nothing. It's disabled by default.
+ *
+ * On start, the filter is loaded from its checkpoint file if there is a fresh
+ * one for the same cluster, or else rebuilt in the background by a keys only
+ * scan of the snapshot and redirect tables. Until it's complete, every URL is
+ * reported as possibly known. The checkpoint is deleted once it's loaded and
+ * only written again on a clean stop, so a crash can never leave behind a
+ * checkpoint that's missing URLs added since. Checkpoints older than
+ * checkpointMaxAgeMs, or written for a different cluster, are rebuilt, since
+ * the tables may have been written without this process in the meantime.
+ */
+public class KnownUrlFilter {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(KnownUrlFilter.class);
+
+  private static final int CHECKPOINT_VERSION = 1;
+  private static final String SNAPSHOT_FAMILY = "meta";
+  private static final String REDIRECT_FAMILY = "d";
+
+  private final String zkHost;
+  private final String zkPort;
+
+  private boolean enabled = false;
+  private String snapshotTable = "webpagesnapshots";
+  private String redirectTable = "webpageredirects";
+  private long expectedUrls = 10000000L;
+  private double falsePositiveRate = 0.01;
+  private String checkpointFile = "";
+  private long checkpointMaxAgeMs = TimeUnit.DAYS.toMillis(1);
+  private double scanRowsPerSecond = 20000;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile BloomFilter filter;
+  private volatile boolean ready = false;
+  private Thread rebuildThread;
+
+  /**
+   * Construct a KnownUrlFilter
+   *
+   * @param zkHost
+   *          HBase zookeeper client hostname
+   * @param zkPort
+   *          HBase zookeeper client port
+   */
+  public KnownUrlFilter(String zkHost, String zkPort) {
+    this.zkHost = zkHost;
+    this.zkPort = zkPort;
+  }
+
+  /**
+   * Enable the filter. Only enable it when this process is the only writer of
+   * the snapshot and redirect tables.
+   *
+   * @param enabled
+   *          Whether the filter is enabled
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setSnapshotTable(String snapshotTable) {
+    this.snapshotTable = snapshotTable;
+  }
+
+  public void setRedirectTable(String redirectTable) {
+    this.redirectTable = redirectTable;
+  }
+
+  public void setExpectedUrls(long expectedUrls) {
+    this.expectedUrls = expectedUrls;
+  }
+
+  public void setFalsePositiveRate(double falsePositiveRate) {
+    this.falsePositiveRate = falsePositiveRate;
+  }
+
+  /**
+   * Set the file the filter is checkpointed to on stop, and loaded from on
+   * start.
+   *
+   * @param checkpointFile
+   *          The checkpoint file, or an empty string to not checkpoint
+   */
+  public void setCheckpointFile(String checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+
+  /**
+   * Set the maximum age of a checkpoint that's loaded on start. Older
+   * checkpoints are discarded, and the filter is rebuilt.
+   *
+   * @param checkpointMaxAgeMs
+   *          The maximum age, in ms
+   */
+  public void setCheckpointMaxAgeMs(long checkpointMaxAgeMs) {
+    this.checkpointMaxAgeMs = checkpointMaxAgeMs;
+  }
+
+  public void setScanRowsPerSecond(double scanRowsPerSecond) {
+    this.scanRowsPerSecond = scanRowsPerSecond;
+  }
+
+  /**
+   * Load the filter from its checkpoint, or start rebuilding it.
+   */
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    if (loadCheckpoint()) {
+      ready = true;
+      return;
+    }
+    filter = newFilter();
+    rebuildThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        rebuild();
+      }
+    }, "known-url-filter-rebuild");
+    rebuildThread.setDaemon(true);
+    rebuildThread.start();
+  }
+
+  /**
+   * Stop a rebuild in progress, or checkpoint the complete filter.
+   */
+  public void stop() {
+    if (rebuildThread != null) {
+      rebuildThread.interrupt();
+    }
+    if (ready) {
+      writeCheckpoint();
+    }
+  }
+
+  /**
+   * Check whether an URL might have a snapshot or a redirect.
+   *
+   * @param url
+   *          The URL, as it's stored
+   * @return False only if the URL definitely has neither
+   */
+  public boolean mightContain(String url) {
+    if (!ready) {
+      return true;
+    }
+    Key key = toKey(url);
+    lock.readLock().lock();
+    try {
+      return filter.membershipTest(key);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Add an URL that has a snapshot or a redirect.
+   *
+   * @param url
+   *          The URL, as it's stored
+   */
+  public void add(String url) {
+    if (filter == null) {
+      return;
+    }
+    Key key = toKey(url);
+    lock.writeLock().lock();
+    try {
+      filter.add(key);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void rebuild() {
+    long start = System.currentTimeMillis();
+    try {
+      Throttle throttle = new Throttle(scanRowsPerSecond);
+      Configuration config = HBaseConfiguration.create();
+      config.set("hbase.zookeeper.quorum", zkHost);
+      config.set("hbase.zookeeper.property.clientPort", zkPort);
+      // snapshots of an URL are adjacent, so the same URL is only added once
+      long urls = scanUrls(config, snapshotTable, SNAPSHOT_FAMILY, throttle)
+          + scanUrls(config, redirectTable, REDIRECT_FAMILY, throttle);
+      ready = true;
+      LOG.info("Built the known URL filter from {} URLs in {} ms", urls,
+          System.currentTimeMillis() - start);
+    } catch (InterruptedException e) {
+      LOG.info("Known URL filter rebuild interrupted");
+    } catch (IOException e) {
+      LOG.error("Error building the known URL filter, it stays disabled", e);
+    } catch (RuntimeException e) {
+      LOG.error("Error building the known URL filter, it stays disabled", e);
+    }
+  }
+
+  /**
+   * Add the URL of every row of a table to the filter. Kite's datasets can
+   * only read whole rows, which for snapshots includes the large content
+   * family, so the table is scanned directly for just the first key of the
+   * small family of each row.
+   *
+   * @return The number of distinct URLs added
+   */
+  private long scanUrls(Configuration config, String table, String family,
+      Throttle throttle) throws IOException, InterruptedException {
+    Scan scan = new Scan();
+    scan.addFamily(Bytes.toBytes(family));
+    scan.setFilter(new FilterList(new FirstKeyOnlyFilter(),
+        new KeyOnlyFilter()));
+    scan.setCaching(1000);
+    scan.setCacheBlocks(false);
+
+    long urls = 0;
+    String lastUrl = null;
+    HTable hTable = new HTable(config, table);
+    try {
+      ResultScanner scanner = hTable.getScanner(scan);
+      try {
+        for (Result result : scanner) {
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+          throttle.acquire(1);
+          String url = getUrl(result.getRow());
+          if (!url.equals(lastUrl)) {
+            add(url);
+            lastUrl = url;
+            urls++;
+          }
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      hTable.close();
+    }
+    return urls;
+  }
+
+  /**
+   * Get the URL from a Kite row key. The URL is the first key field, which
+   * Kite encodes as its UTF-8 bytes terminated by a 0 byte, and URLs never
+   * contain 0 bytes.
+   */
+  static String getUrl(byte[] row) {
+    int end = 0;
+    while (end < row.length && row[end] != 0) {
+      end++;
+    }
+    return Bytes.toString(row, 0, end);
+  }
+
+  private BloomFilter newFilter() {
+    // optimal bits and hash functions for the expected number of URLs
+    double ln2 = Math.log(2);
+    int vectorSize = (int) Math.min(Integer.MAX_VALUE - 64,
+        Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (ln2 * ln2)));
+    int hashes = Math.max(1,
+        (int) Math.round((double) vectorSize / expectedUrls * ln2));
+    return new BloomFilter(vectorSize, hashes, Hash.MURMUR_HASH);
+  }
+
+  private boolean loadCheckpoint() {
+    if (checkpointFile.length() == 0) {
+      return false;
+    }
+    File file = new File(checkpointFile);
+    if (!file.exists()) {
+      return false;
+    }
+    try {
+      BloomFilter loaded = new BloomFilter();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file)));
+      try {
+        if (in.readInt() != CHECKPOINT_VERSION
+            || !in.readUTF().equals(getCluster())) {
+          LOG.info("Known URL filter checkpoint {} is for another cluster, "
+              + "rebuilding it", file);
+          return false;
+        }
+        long age = System.currentTimeMillis() - in.readLong();
+        if (age > checkpointMaxAgeMs) {
+          LOG.info("Known URL filter checkpoint {} is {} ms old, rebuilding it",
+              file, age);
+          return false;
+        }
+        loaded.readFields(in);
+      } finally {
+        in.close();
+      }
+      filter = loaded;
+      LOG.info("Loaded the known URL filter from {}", file);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Couldn't load the known URL filter from " + file
+          + ", rebuilding it", e);
+      return false;
+    } finally {
+      // it's only valid until the first URL is added
+      if (!file.delete()) {
+        LOG.warn("Couldn't delete the known URL filter checkpoint {}", file);
+      }
+    }
+  }
+
+  private void writeCheckpoint() {
+    if (checkpointFile.length() == 0) {
+      return;
+    }
+    File file = new File(checkpointFile);
+    File tmp = new File(checkpointFile + ".tmp");
+    lock.readLock().lock();
+    try {
+      if (file.getParentFile() != null) {
+        file.getParentFile().mkdirs();
+      }
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(tmp)));
+      try {
+        out.writeInt(CHECKPOINT_VERSION);
+        out.writeUTF(getCluster());
+        out.writeLong(System.currentTimeMillis());
+        filter.write(out);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        throw new IOException("Couldn't rename " + tmp + " to " + file);
+      }
+      LOG.info("Checkpointed the known URL filter to {}", file);
+    } catch (IOException e) {
+      LOG.warn("Couldn't checkpoint the known URL filter to " + file, e);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private String getCluster() {
+    return zkHost + ":" + zkPort + "/" + snapshotTable + "," + redirectTable;
+  }
+
+  private static Key toKey(String url) {
+    try {
+      return new Key(url.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
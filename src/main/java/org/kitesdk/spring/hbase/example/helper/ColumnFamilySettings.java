@@ -0,0 +1,144 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.util.Locale;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+
+/**
+ * The storage settings of a single HBase column family. Settings that aren't
+ * set are left at the HBase defaults.
+ */
+public class ColumnFamilySettings {
+
+  private String name;
+  private String compression;
+  private String bloomFilter;
+  private String dataBlockEncoding;
+  private Integer blockSize;
+  private Boolean blockCacheEnabled;
+  private Boolean inMemory;
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Set the name of the column family
+   *
+   * @param name
+   *          The column family name
+   */
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Set the compression algorithm, ie: NONE, SNAPPY, GZ
+   *
+   * @param compression
+   *          The Compression.Algorithm name
+   */
+  public void setCompression(String compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * Set the Bloom filter type, ie: NONE, ROW, ROWCOL
+   *
+   * @param bloomFilter
+   *          The BloomType name
+   */
+  public void setBloomFilter(String bloomFilter) {
+    this.bloomFilter = bloomFilter;
+  }
+
+  /**
+   * Set the data block encoding, ie: NONE, PREFIX, FAST_DIFF
+   *
+   * @param dataBlockEncoding
+   *          The DataBlockEncoding name
+   */
+  public void setDataBlockEncoding(String dataBlockEncoding) {
+    this.dataBlockEncoding = dataBlockEncoding;
+  }
+
+  /**
+   * Set the HFile block size
+   *
+   * @param blockSize
+   *          The block size in bytes
+   */
+  public void setBlockSize(Integer blockSize) {
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Set whether blocks read from this family are kept in the block cache.
+   *
+   * @param blockCacheEnabled
+   *          true to cache blocks
+   */
+  public void setBlockCacheEnabled(Boolean blockCacheEnabled) {
+    this.blockCacheEnabled = blockCacheEnabled;
+  }
+
+  /**
+   * Set whether this family gets priority in the block cache.
+   *
+   * @param inMemory
+   *          true to give the family in-memory priority
+   */
+  public void setInMemory(Boolean inMemory) {
+    this.inMemory = inMemory;
+  }
+
+  /**
+   * Apply these settings to a column family descriptor.
+   *
+   * @param desc
+   *          The descriptor to update
+   * @return The updated descriptor
+   */
+  public HColumnDescriptor applyTo(HColumnDescriptor desc) {
+    if (compression != null) {
+      desc.setCompressionType(Compression.Algorithm.valueOf(compression
+          .toUpperCase(Locale.ENGLISH)));
+    }
+    if (bloomFilter != null) {
+      desc.setBloomFilterType(BloomType.valueOf(bloomFilter
+          .toUpperCase(Locale.ENGLISH)));
+    }
+    if (dataBlockEncoding != null) {
+      desc.setDataBlockEncoding(DataBlockEncoding.valueOf(dataBlockEncoding
+          .toUpperCase(Locale.ENGLISH)));
+    }
+    if (blockSize != null) {
+      desc.setBlocksize(blockSize);
+    }
+    if (blockCacheEnabled != null) {
+      desc.setBlockCacheEnabled(blockCacheEnabled);
+    }
+    if (inMemory != null) {
+      desc.setInMemory(inMemory);
+    }
+    return desc;
+  }
+}
@@ -44,8 +44,38 @@ public class DevHelper {
   public static List<RandomAccessDataset<?>> createOrUpdateDatasets(
       String zkHost, String zkPort, Map<String, String> datasetNameSchemaMap)
       throws URISyntaxException, IOException {
+    return createOrUpdateDatasets(zkHost, zkPort, datasetNameSchemaMap, null);
+  }
+
+  /**
+   * Provision the HBase tables, and then create the HBase datasets in the map
+   * of dataset names to schema files
+   * 
+   * @param zkHost
+   *          HBase zookeeper client hostname
+   * @param zkPort
+   *          HBase zookeeper client port
+   * @param datasetNameSchemaMap
+   *          A map of dataset names to the Avro schema files that we want to
+   *          create. The schema files are a location, which can be a location
+   *          on the classpath, represented with a "classpath:/" prefix.
+   * @param tableProvisioner
+   *          The TableProvisioner that creates and tunes the dataset tables
+   *          before the datasets are created, or null to let Kite create them
+   *          with default settings.
+   * @return THe list of created datasets.
+   * @throws URISyntaxException
+   * @throws IOException
+   */
+  public static List<RandomAccessDataset<?>> createOrUpdateDatasets(
+      String zkHost, String zkPort, Map<String, String> datasetNameSchemaMap,
+      TableProvisioner tableProvisioner) throws URISyntaxException,
+      IOException {
 
     createManagedSchemasTable(zkHost, zkPort);
+    if (tableProvisioner != null) {
+      tableProvisioner.provision();
+    }
 
     List<RandomAccessDataset<?>> datasets = new ArrayList<RandomAccessDataset<?>>();
     for (Entry<String, String> entry : datasetNameSchemaMap.entrySet()) {
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encodes the outlinks of a page compactly for storage, and decodes them back
+ * to absolute URLs.
+ *
+ * Outlinks are normalized absolute http or https URLs. Links to the same
+ * origin (scheme, host and port) as the page are stored as just their path and
+ * query, starting with "/", which is the bulk of the links on most pages.
+ * Links to other origins are stored as is. Since stored absolute URLs always
+ * start with a scheme, the two can't be confused.
+ */
+public class OutlinkCodec {
+
+  private OutlinkCodec() {
+  }
+
+  /**
+   * Normalize an absolute URL: the scheme and host are lower cased, default
+   * ports and fragments are dropped, and an empty path becomes "/".
+   *
+   * @param url
+   *          The absolute URL
+   * @return The normalized URL, or null if it's not a valid http or https URL
+   */
+  public static String normalize(String url) {
+    if (url == null || url.length() == 0) {
+      return null;
+    }
+    URL parsed;
+    try {
+      parsed = new URL(url);
+    } catch (MalformedURLException e) {
+      return null;
+    }
+    String protocol = parsed.getProtocol().toLowerCase(Locale.ENGLISH);
+    if (!protocol.equals("http") && !protocol.equals("https")) {
+      return null;
+    }
+    String host = parsed.getHost().toLowerCase(Locale.ENGLISH);
+    if (host.length() == 0) {
+      return null;
+    }
+    StringBuilder normalized = new StringBuilder(url.length());
+    normalized.append(protocol).append("://").append(host);
+    if (parsed.getPort() != -1 && parsed.getPort() != parsed.getDefaultPort()) {
+      normalized.append(':').append(parsed.getPort());
+    }
+    normalized.append(parsed.getPath().length() > 0 ? parsed.getPath() : "/");
+    if (parsed.getQuery() != null) {
+      normalized.append('?').append(parsed.getQuery());
+    }
+    return normalized.toString();
+  }
+
+  /**
+   * Encode a normalized outlink of a page.
+   *
+   * @param origin
+   *          The origin of the page, from getOrigin
+   * @param outlink
+   *          The normalized outlink
+   * @return The encoded outlink
+   */
+  public static String encode(String origin, String outlink) {
+    if (origin != null && outlink.startsWith(origin)
+        && outlink.length() > origin.length()
+        && outlink.charAt(origin.length()) == '/') {
+      return outlink.substring(origin.length());
+    }
+    return outlink;
+  }
+
+  /**
+   * Decode an outlink of a page.
+   *
+   * @param origin
+   *          The origin of the page, from getOrigin
+   * @param encoded
+   *          The encoded outlink
+   * @return The absolute outlink
+   */
+  public static String decode(String origin, String encoded) {
+    if (encoded.startsWith("//")) {
+      // protocol relative links stored before outlinks were resolved
+      return origin != null ? origin.substring(0, origin.indexOf(':') + 1)
+          + encoded : encoded;
+    }
+    if (encoded.startsWith("/") && origin != null) {
+      return origin + encoded;
+    }
+    return encoded;
+  }
+
+  /**
+   * Get a view of the encoded outlinks of a page that decodes each of them
+   * only when it's accessed.
+   *
+   * @param pageUrl
+   *          The URL of the page
+   * @param encoded
+   *          The encoded outlinks, or null
+   * @return The decoded view, or null if the encoded outlinks are null
+   */
+  public static List<String> decodeAll(String pageUrl,
+      final List<? extends CharSequence> encoded) {
+    if (encoded == null) {
+      return null;
+    }
+    final String origin = getOrigin(pageUrl);
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return decode(origin, encoded.get(index).toString());
+      }
+
+      @Override
+      public int size() {
+        return encoded.size();
+      }
+    };
+  }
+
+  /**
+   * Get the origin of a page, which is its normalized scheme, host and port.
+   *
+   * @param pageUrl
+   *          The URL of the page
+   * @return The origin, or null if the URL isn't a valid http or https URL
+   */
+  public static String getOrigin(String pageUrl) {
+    String normalized = normalize(pageUrl);
+    if (normalized == null) {
+      return null;
+    }
+    return normalized.substring(0, normalized.indexOf('/',
+        normalized.indexOf("://") + 3));
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Direct access to the redirect table, for the operations Kite's datasets
+ * don't offer: resolving the redirects of many URLs with a single multi-get,
+ * and atomically pointing a redirect at a new destination only if it still
+ * points at the expected one.
+ *
+ * The rows are read and written in the layout Kite uses for
+ * WebPageRedirectModel, so they stay readable through the dataset: the row key
+ * is the URL, memcmp encoded as its UTF-8 bytes followed by a 0x00 0x00
+ * terminator, and the destination is stored in d:d as an Avro binary encoded
+ * string.
+ */
+public class RedirectTable {
+
+  private static final byte[] FAMILY = Bytes.toBytes("d");
+  private static final byte[] DESTINATION_COLUMN = Bytes.toBytes("d");
+
+  private final String zkHost;
+  private final String zkPort;
+  private String tableName = "webpageredirects";
+  private HConnection connection;
+
+  /**
+   * Construct a RedirectTable
+   *
+   * @param zkHost
+   *          HBase zookeeper client hostname
+   * @param zkPort
+   *          HBase zookeeper client port
+   */
+  public RedirectTable(String zkHost, String zkPort) {
+    this.zkHost = zkHost;
+    this.zkPort = zkPort;
+  }
+
+  public void setTableName(String tableName) {
+    this.tableName = tableName;
+  }
+
+  public void start() throws IOException {
+    Configuration config = HBaseConfiguration.create();
+    config.set("hbase.zookeeper.quorum", zkHost);
+    config.set("hbase.zookeeper.property.clientPort", zkPort);
+    connection = HConnectionManager.createConnection(config);
+  }
+
+  public void stop() throws IOException {
+    if (connection != null) {
+      connection.close();
+    }
+  }
+
+  /**
+   * Get the redirect destinations of many URLs with a single multi-get, which
+   * the client groups into one request per region server.
+   *
+   * @param urls
+   *          The URLs to look up
+   * @return A map of each URL that redirects to its destination. URLs that
+   *         don't redirect aren't in the map.
+   * @throws IOException
+   */
+  public Map<String, String> getDestinations(List<String> urls)
+      throws IOException {
+    List<Get> gets = new ArrayList<Get>(urls.size());
+    for (String url : urls) {
+      Get get = new Get(toRowKey(url));
+      get.addColumn(FAMILY, DESTINATION_COLUMN);
+      gets.add(get);
+    }
+    Map<String, String> destinations = new HashMap<String, String>();
+    HTableInterface table = connection.getTable(tableName);
+    try {
+      // results are in the order of the gets, empty for missing rows
+      Result[] results = table.get(gets);
+      for (int i = 0; i < results.length; i++) {
+        byte[] value = results[i].getValue(FAMILY, DESTINATION_COLUMN);
+        if (value != null) {
+          destinations.put(urls.get(i), decodeString(value));
+        }
+      }
+    } finally {
+      table.close();
+    }
+    return destinations;
+  }
+
+  /**
+   * Point the redirect of an URL at a new destination, but only if it still
+   * points at the expected destination. The check and the write are a single
+   * atomic row operation, so a redirect that was concurrently pointed
+   * somewhere else is never overwritten.
+   *
+   * @param url
+   *          The URL that redirects
+   * @param expectedDestinationUrl
+   *          The destination the redirect must currently point at
+   * @param destinationUrl
+   *          The new destination
+   * @return True if the redirect was rewritten, false if it no longer pointed
+   *         at the expected destination.
+   * @throws IOException
+   */
+  public boolean repoint(String url, String expectedDestinationUrl,
+      String destinationUrl) throws IOException {
+    byte[] row = toRowKey(url);
+    Put put = new Put(row);
+    put.add(FAMILY, DESTINATION_COLUMN, encodeString(destinationUrl));
+    HTableInterface table = connection.getTable(tableName);
+    try {
+      return table.checkAndPut(row, FAMILY, DESTINATION_COLUMN,
+          encodeString(expectedDestinationUrl), put);
+    } finally {
+      table.close();
+    }
+  }
+
+  /**
+   * Encode an URL as the row key Kite uses for a single string key field.
+   */
+  static byte[] toRowKey(String url) {
+    byte[] bytes = Bytes.toBytes(url);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 2);
+    for (byte b : bytes) {
+      // memcmp encoding escapes 0 bytes, so they sort before the terminator
+      if (b == 0) {
+        out.write(0);
+        out.write(1);
+      } else {
+        out.write(b);
+      }
+    }
+    out.write(0);
+    out.write(0);
+    return out.toByteArray();
+  }
+
+  /**
+   * Encode a string column value the way Kite stores it, in Avro binary.
+   */
+  static byte[] encodeString(String value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    encoder.writeString(value);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode a string column value Kite stored in Avro binary.
+   */
+  static String decodeString(byte[] value) throws IOException {
+    return DecoderFactory.get().binaryDecoder(value, null).readString(null)
+        .toString();
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.util.Locale;
+
+/**
+ * Computes 64 bit SimHash fingerprints of text. Texts that share most of their
+ * word shingles get fingerprints that differ in only a few bits, so near
+ * duplicates can be found by comparing fingerprints instead of full contents.
+ *
+ * The text is lower cased and split into words, and every pair of adjacent
+ * words is a feature. Each feature is hashed to 64 bits, and each bit of the
+ * fingerprint is set if it's set in the majority of feature hashes. Lower
+ * casing doesn't depend on the default locale, so the same text gets the same
+ * fingerprint on every machine.
+ */
+public class SimHash {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private SimHash() {
+  }
+
+  /**
+   * Compute the SimHash fingerprint of some text.
+   *
+   * @param text
+   *          The text to fingerprint
+   * @return The fingerprint, or 0 if the text has no words
+   */
+  public static long compute(String text) {
+    int[] weights = new int[64];
+    int features = 0;
+    String previous = null;
+    String lowerCaseText = text.toLowerCase(Locale.ENGLISH);
+    for (String word : lowerCaseText.split("[^\\p{L}\\p{N}]+")) {
+      if (word.length() == 0) {
+        continue;
+      }
+      if (previous != null) {
+        addFeature(weights, hash(previous, word));
+        features++;
+      }
+      previous = word;
+    }
+    if (features == 0 && previous != null) {
+      // a single word page still gets a fingerprint
+      addFeature(weights, hash(previous, ""));
+      features++;
+    }
+    if (features == 0) {
+      return 0L;
+    }
+
+    long simHash = 0L;
+    for (int bit = 0; bit < 64; bit++) {
+      if (weights[bit] > 0) {
+        simHash |= 1L << bit;
+      }
+    }
+    return simHash;
+  }
+
+  /**
+   * Get the number of bits two fingerprints differ in.
+   *
+   * @param a
+   *          A fingerprint
+   * @param b
+   *          Another fingerprint
+   * @return The hamming distance between them
+   */
+  public static int distance(long a, long b) {
+    return Long.bitCount(a ^ b);
+  }
+
+  /**
+   * Get one of the bands of a fingerprint.
+   *
+   * @param simHash
+   *          The fingerprint
+   * @param band
+   *          The band, from 0 to bands - 1
+   * @param bands
+   *          The number of equal width bands the fingerprint is split into
+   * @return The bits of the band, as a non-negative int
+   */
+  public static int band(long simHash, int band, int bands) {
+    int width = 64 / bands;
+    return (int) ((simHash >>> (band * width)) & ((1L << width) - 1));
+  }
+
+  private static void addFeature(int[] weights, long hash) {
+    for (int bit = 0; bit < 64; bit++) {
+      if (((hash >>> bit) & 1L) != 0) {
+        weights[bit]++;
+      } else {
+        weights[bit]--;
+      }
+    }
+  }
+
+  /**
+   * FNV-1a hash of a word pair, finished with a 64 bit mix so every bit of
+   * the result depends on every character.
+   */
+  private static long hash(String first, String second) {
+    long hash = FNV_OFFSET_BASIS;
+    hash = hash(hash, first);
+    hash = (hash ^ ' ') * FNV_PRIME;
+    hash = hash(hash, second);
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private static long hash(long hash, String word) {
+    for (int i = 0; i < word.length(); i++) {
+      hash = (hash ^ word.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent calls for the same key into a single call. The first
+ * caller for a key runs the operation on its own thread, and every caller that
+ * arrives while it's in flight waits for and shares its result, or its
+ * exception. Once the operation completes, the next call for the key runs it
+ * again.
+ *
+ * @param <K>
+ *          The key type
+ * @param <V>
+ *          The result type
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+
+  /**
+   * Run the operation for a key, or join the call already in flight for it.
+   *
+   * @param key
+   *          The key identifying the operation
+   * @param callable
+   *          The operation to run if none is in flight for the key
+   * @return The result of the operation
+   * @throws Exception
+   *           The exception thrown by the operation
+   */
+  public V execute(K key, Callable<V> callable) throws Exception {
+    FutureTask<V> task = new FutureTask<V>(callable);
+    FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+    if (existing == null) {
+      try {
+        task.run();
+      } finally {
+        inFlight.remove(key, task);
+      }
+      existing = task;
+    } else {
+      joined(key);
+    }
+    try {
+      return existing.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw (Error) e.getCause();
+    }
+  }
+
+  /**
+   * Called when a caller joins the call in flight for a key, before it waits
+   * for the result. Does nothing by default.
+   *
+   * @param key
+   *          The key of the call in flight
+   */
+  protected void joined(K key) {
+  }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates and tunes the HBase tables backing the datasets. This runs before the
+ * datasets are created, so Kite finds the tables already provisioned:
+ *
+ * New tables are created pre-split, so load is spread over the region servers
+ * from the start instead of hitting a single region until splits catch up.
+ *
+ * Every configured column family gets its compression, Bloom filter, block
+ * size and block cache settings applied, both on new tables and on existing
+ * ones. Existing tables are altered online, and only when their settings
+ * differ.
+ *
+ * Kite row keys start with the bytes of the first key field, so for the
+ * snapshot and redirect tables an URL prefix is a valid split point.
+ */
+public class TableProvisioner {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(TableProvisioner.class);
+
+  /**
+   * Column families Kite stores its own bookkeeping in.
+   */
+  private static final String[] KITE_SYSTEM_FAMILIES = { "_s", "observable" };
+
+  private final String zkHost;
+  private final String zkPort;
+  private List<TableSettings> tables = new ArrayList<TableSettings>();
+
+  /**
+   * Construct a TableProvisioner
+   *
+   * @param zkHost
+   *          HBase zookeeper client hostname
+   * @param zkPort
+   *          HBase zookeeper client port
+   */
+  public TableProvisioner(String zkHost, String zkPort) {
+    this.zkHost = zkHost;
+    this.zkPort = zkPort;
+  }
+
+  /**
+   * Set the tables to provision
+   *
+   * @param tables
+   *          The table settings
+   */
+  public void setTables(List<TableSettings> tables) {
+    this.tables = tables;
+  }
+
+  /**
+   * Create any missing tables, and apply the column family settings to every
+   * configured table.
+   *
+   * @return The names of the provisioned tables
+   * @throws IOException
+   */
+  public List<String> provision() throws IOException {
+    Configuration config = HBaseConfiguration.create();
+    config.set("hbase.zookeeper.quorum", zkHost);
+    config.set("hbase.zookeeper.property.clientPort", zkPort);
+    HBaseAdmin admin = new HBaseAdmin(config);
+    List<String> provisioned = new ArrayList<String>();
+    try {
+      for (TableSettings table : tables) {
+        if (!admin.tableExists(table.getName())) {
+          createTable(admin, table);
+        } else {
+          updateTable(admin, table);
+        }
+        provisioned.add(table.getName());
+      }
+    } finally {
+      admin.close();
+    }
+    return provisioned;
+  }
+
+  private void createTable(HBaseAdmin admin, TableSettings table)
+      throws IOException {
+    @SuppressWarnings("deprecation")
+    HTableDescriptor desc = new HTableDescriptor(table.getName());
+    for (ColumnFamilySettings family : table.getFamilies()) {
+      desc.addFamily(family.applyTo(new HColumnDescriptor(family.getName())));
+    }
+    for (String systemFamily : KITE_SYSTEM_FAMILIES) {
+      if (!desc.hasFamily(Bytes.toBytes(systemFamily))) {
+        desc.addFamily(new HColumnDescriptor(systemFamily));
+      }
+    }
+
+    byte[][] splitKeys = getSplitKeys(table);
+    if (splitKeys.length > 0) {
+      admin.createTable(desc, splitKeys);
+    } else {
+      admin.createTable(desc);
+    }
+    LOG.info("Created table {} with {} regions", table.getName(),
+        splitKeys.length + 1);
+  }
+
+  private void updateTable(HBaseAdmin admin, TableSettings table)
+      throws IOException {
+    HTableDescriptor desc = admin.getTableDescriptor(Bytes.toBytes(table
+        .getName()));
+    for (ColumnFamilySettings family : table.getFamilies()) {
+      HColumnDescriptor existing = desc.getFamily(Bytes.toBytes(family
+          .getName()));
+      if (existing == null) {
+        admin.addColumn(table.getName(),
+            family.applyTo(new HColumnDescriptor(family.getName())));
+        LOG.info("Added column family {} to table {}", family.getName(),
+            table.getName());
+      } else {
+        HColumnDescriptor updated = family.applyTo(new HColumnDescriptor(
+            existing));
+        if (!updated.equals(existing)) {
+          admin.modifyColumn(table.getName(), updated);
+          LOG.info("Updated column family {} of table {}", family.getName(),
+              table.getName());
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the split keys for a table, either from the configured split keys, or
+   * by taking evenly spaced quantiles of the sample file.
+   */
+  private byte[][] getSplitKeys(TableSettings table) throws IOException {
+    List<String> keys = new ArrayList<String>();
+    if (table.getSplitKeys().length > 0) {
+      for (String splitKey : table.getSplitKeys()) {
+        if (splitKey.trim().length() > 0) {
+          keys.add(splitKey.trim());
+        }
+      }
+    } else if (table.getSplitSampleFile() != null
+        && table.getSplitSampleFile().length() > 0 && table.getRegions() > 1) {
+      keys = sampleSplitKeys(new File(table.getSplitSampleFile()),
+          table.getRegions());
+    }
+
+    // split keys must be unique and sorted
+    TreeSet<String> sortedKeys = new TreeSet<String>(keys);
+    byte[][] splitKeys = new byte[sortedKeys.size()][];
+    int i = 0;
+    for (String key : sortedKeys) {
+      splitKeys[i++] = Bytes.toBytes(key);
+    }
+    return splitKeys;
+  }
+
+  private List<String> sampleSplitKeys(File sampleFile, int regions)
+      throws IOException {
+    List<String> samples = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(sampleFile), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() > 0) {
+          samples.add(line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    Collections.sort(samples);
+
+    List<String> splitKeys = new ArrayList<String>();
+    if (samples.size() < regions) {
+      return splitKeys;
+    }
+    for (int i = 1; i < regions; i++) {
+      splitKeys.add(samples.get((int) ((long) i * samples.size() / regions)));
+    }
+    return splitKeys;
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The provisioning settings of an HBase table: its column families, and how it
+ * should be pre-split when it's created.
+ *
+ * Split points are either configured directly with splitKeys, or sampled from
+ * a file of representative row key prefixes (one per line, ie: URLs) with
+ * splitSampleFile and regions. Configured split keys take precedence.
+ */
+public class TableSettings {
+
+  private String name;
+  private List<ColumnFamilySettings> families = new ArrayList<ColumnFamilySettings>();
+  private String[] splitKeys = new String[0];
+  private String splitSampleFile;
+  private int regions = 1;
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Set the name of the HBase table
+   *
+   * @param name
+   *          The table name
+   */
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public List<ColumnFamilySettings> getFamilies() {
+    return families;
+  }
+
+  /**
+   * Set the column families of the table
+   *
+   * @param families
+   *          The column family settings
+   */
+  public void setFamilies(List<ColumnFamilySettings> families) {
+    this.families = families;
+  }
+
+  public String[] getSplitKeys() {
+    return splitKeys;
+  }
+
+  /**
+   * Set the row key prefixes the table is split on when it's created.
+   *
+   * @param splitKeys
+   *          The split keys
+   */
+  public void setSplitKeys(String[] splitKeys) {
+    this.splitKeys = splitKeys;
+  }
+
+  public String getSplitSampleFile() {
+    return splitSampleFile;
+  }
+
+  /**
+   * Set a file of sample row key prefixes that split points are computed from
+   * when no split keys are configured.
+   *
+   * @param splitSampleFile
+   *          The sample file location, or an empty string for none
+   */
+  public void setSplitSampleFile(String splitSampleFile) {
+    this.splitSampleFile = splitSampleFile;
+  }
+
+  public int getRegions() {
+    return regions;
+  }
+
+  /**
+   * Set the number of regions to create from the sample file.
+   *
+   * @param regions
+   *          The number of regions
+   */
+  public void setRegions(int regions) {
+    this.regions = regions;
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simple throttle that paces a background job to a fixed number of
+ * operations per second by sleeping the calling thread.
+ */
+public class Throttle {
+
+  private final double nanosPerPermit;
+  private long nextFreeNanos = System.nanoTime();
+
+  /**
+   * Construct a Throttle
+   *
+   * @param permitsPerSecond
+   *          The number of permits handed out per second. A value of zero or
+   *          less disables throttling.
+   */
+  public Throttle(double permitsPerSecond) {
+    this.nanosPerPermit = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1)
+        / permitsPerSecond : 0;
+  }
+
+  /**
+   * Acquire permits, sleeping until they are available.
+   *
+   * @param permits
+   *          The number of permits to acquire
+   * @throws InterruptedException
+   */
+  public synchronized void acquire(int permits) throws InterruptedException {
+    if (nanosPerPermit == 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (nextFreeNanos > now) {
+      TimeUnit.NANOSECONDS.sleep(nextFreeNanos - now);
+    } else {
+      // don't let idle time accumulate into a burst
+      nextFreeNanos = now;
+    }
+    nextFreeNanos += (long) (permits * nanosPerPermit);
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+
+/**
+ * A Helper class that extracts the metadata required by WebPageSnapshotModel
+ * from a parsed HTML document. This is shared by live fetches and archive
+ * imports so both produce identical models.
+ */
+public class WebPageParser {
+
+  private WebPageParser() {
+  }
+
+  /**
+   * Parse the HTML document to populate the metadata required by
+   * WebPageSnapshotModel, and return the constructed WebPageSnapshotModel.
+   *
+   * @param url
+   *          The URL the document was served from
+   * @param doc
+   *          The parsed HTML document
+   * @param fetchedAt
+   *          The epoch time the document was fetched at
+   * @param fetchTimeMs
+   *          The amount of time, in ms, it took to fetch the document
+   * @return The WebPageSnapshotModel
+   */
+  public static WebPageSnapshotModel parse(String url, Document doc,
+      long fetchedAt, int fetchTimeMs) {
+    String html = doc.html();
+    String title = doc.title();
+    String description = getDescriptionFromDocument(doc);
+    List<String> keywords = getKeywordsFromDocument(doc);
+    List<String> outlinks = getOutlinksFromDocument(url, doc);
+    long simHash = SimHash.compute(doc.body() != null ? doc.body().text()
+        : doc.text());
+
+    return WebPageSnapshotModel.newBuilder().setUrl(url)
+        .setFetchedAtRevTs(Long.MAX_VALUE - fetchedAt)
+        .setSize(html.length()).setFetchedAt(fetchedAt)
+        .setFetchTimeMs(fetchTimeMs).setTitle(title)
+        .setDescription(description).setKeywords(keywords)
+        .setOutlinks(outlinks).setSimHash(simHash).setContent(html).build();
+  }
+
+  /**
+   * Parse the description out of the meta tag if one exists. Otherwise, return
+   * null
+   *
+   * @param doc
+   *          The Document to parse
+   * @return The description if it exists in the HTML, otherwise null.
+   */
+  private static String getDescriptionFromDocument(Document doc) {
+    Elements metaDescriptionElements = doc.select("meta[name=description]");
+    return metaDescriptionElements.size() > 0 ? metaDescriptionElements
+        .attr("content") : "";
+  }
+
+  /**
+   * Parse the keywords out of the meta tag if one exists. Otherwise, return an
+   * empty list.
+   *
+   * @param doc
+   *          The Document ot parse
+   * @return The list of keywords.
+   */
+  private static List<String> getKeywordsFromDocument(Document doc) {
+    List<String> keywords = new ArrayList<String>();
+    Elements keywordsElements = doc.select("meta[name=keywords]");
+    for (Element keywordsElement : keywordsElements) {
+      for (String keyword : keywordsElement.attr("content").split(",")) {
+        keywords.add(keyword.trim());
+      }
+    }
+    return keywords;
+  }
+
+  /**
+   * Parse the outlinks from a href tags in the document, and return them as a
+   * list. Links are resolved against the document's base URI and normalized,
+   * links that aren't http or https are dropped, and each link is kept once,
+   * in the order of its first occurrence. The links are encoded with the
+   * OutlinkCodec.
+   *
+   * @param url
+   *          The URL the document was served from
+   * @param doc
+   *          The document to parse
+   * @return The list of encoded outlinks.
+   */
+  private static List<String> getOutlinksFromDocument(String url, Document doc) {
+    String origin = OutlinkCodec.getOrigin(url);
+    Set<String> outlinks = new LinkedHashSet<String>();
+    Elements linkElements = doc.select("a[href]");
+    for (Element linkElement : linkElements) {
+      String outlink = OutlinkCodec.normalize(linkElement.absUrl("href"));
+      if (outlink != null) {
+        outlinks.add(OutlinkCodec.encode(origin, outlink));
+      }
+    }
+    return new ArrayList<String>(outlinks);
+  }
+}
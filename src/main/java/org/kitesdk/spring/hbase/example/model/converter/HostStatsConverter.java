@@ -0,0 +1,54 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.model.converter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kitesdk.spring.hbase.example.model.WebPageHostStatsModel;
+import org.kitesdk.spring.hbase.example.model.frontend.HostStats;
+import org.springframework.core.convert.converter.Converter;
+
+/**
+ * Converter to convert from the backend model WebPageHostStatsModel to the
+ * frontend model HostStats
+ */
+public class HostStatsConverter implements
+    Converter<WebPageHostStatsModel, HostStats> {
+
+  @Override
+  public HostStats convert(WebPageHostStatsModel model) {
+    HostStats stats = new HostStats();
+    stats.setHost(model.getHost());
+    stats.setBucket(model.getBucket());
+    stats.setSnapshotCount(model.getSnapshotCount());
+    if (model.getSnapshotCount() > 0) {
+      stats.setAvgFetchTimeMs((double) model.getTotalFetchTimeMs()
+          / model.getSnapshotCount());
+      stats.setAvgSize((double) model.getTotalSize()
+          / model.getSnapshotCount());
+    }
+    Map<String, Long> sizeDistribution = new LinkedHashMap<String, Long>();
+    sizeDistribution.put("16k", model.getSizeUpTo16k());
+    sizeDistribution.put("64k", model.getSizeUpTo64k());
+    sizeDistribution.put("256k", model.getSizeUpTo256k());
+    sizeDistribution.put("1m", model.getSizeUpTo1m());
+    sizeDistribution.put("over1m", model.getSizeOver1m());
+    stats.setSizeDistribution(sizeDistribution);
+    return stats;
+  }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.model.converter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.kitesdk.spring.hbase.example.helper.OutlinkCodec;
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotBatchView;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotView;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotView.Part;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * HttpMessageConverter that writes WebPageSnapshotView and
+ * WebPageSnapshotBatchView responses as JSON, streaming the fields straight
+ * from the backend WebPageSnapshotModel with a JsonGenerator. This skips
+ * copying each snapshot into a frontend model and serializing that with
+ * reflection, while writing the same JSON as the WebPageSnapshotMeta and
+ * WebPageSnapshotContent frontend models.
+ */
+public class WebPageSnapshotJsonMessageConverter extends
+    AbstractHttpMessageConverter<Object> {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  public WebPageSnapshotJsonMessageConverter() {
+    super(new MediaType("application", "json", UTF8), new MediaType(
+        "application", "*+json", UTF8));
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return WebPageSnapshotView.class.equals(clazz)
+        || WebPageSnapshotBatchView.class.equals(clazz);
+  }
+
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected Object readInternal(Class<? extends Object> clazz,
+      HttpInputMessage inputMessage) throws IOException,
+      HttpMessageNotReadableException {
+    throw new HttpMessageNotReadableException(clazz.getName()
+        + " can't be read from JSON");
+  }
+
+  @Override
+  protected void writeInternal(Object object, HttpOutputMessage outputMessage)
+      throws IOException, HttpMessageNotWritableException {
+    JsonGenerator generator = jsonFactory.createJsonGenerator(
+        outputMessage.getBody(), JsonEncoding.UTF8);
+    try {
+      if (object instanceof WebPageSnapshotView) {
+        WebPageSnapshotView view = (WebPageSnapshotView) object;
+        writeSnapshot(generator, view.getModel(), view.getPart());
+      } else {
+        WebPageSnapshotBatchView view = (WebPageSnapshotBatchView) object;
+        generator.writeStartObject();
+        for (Entry<String, WebPageSnapshotModel> entry : view.getModels()
+            .entrySet()) {
+          generator.writeFieldName(entry.getKey());
+          writeSnapshot(generator, entry.getValue(), view.getPart());
+        }
+        generator.writeEndObject();
+      }
+    } finally {
+      generator.close();
+    }
+  }
+
+  private void writeSnapshot(JsonGenerator generator,
+      WebPageSnapshotModel model, Part part) throws IOException {
+    if (model == null) {
+      generator.writeNull();
+      return;
+    }
+    generator.writeStartObject();
+    writeString(generator, "url", model.getUrl());
+    generator.writeNumberField("fetchedAt", model.getFetchedAt());
+    if (part == Part.META) {
+      generator.writeNumberField("fetchTimeMs", model.getFetchTimeMs());
+      generator.writeNumberField("size", model.getSize());
+      writeString(generator, "title", model.getTitle());
+      writeString(generator, "description", model.getDescription());
+      writeStrings(generator, "keywords", model.getKeywords());
+      writeStrings(generator, "outlinks",
+          OutlinkCodec.decodeAll(model.getUrl(), model.getOutlinks()));
+      generator.writeStringField("simHash",
+          Long.toHexString(model.getSimHash()));
+      generator.writeBooleanField("changed", model.getChanged());
+    } else {
+      writeString(generator, "content", model.getContent());
+    }
+    generator.writeEndObject();
+  }
+
+  private void writeString(JsonGenerator generator, String fieldName,
+      CharSequence value) throws IOException {
+    if (value != null) {
+      generator.writeStringField(fieldName, value.toString());
+    } else {
+      generator.writeNullField(fieldName);
+    }
+  }
+
+  private void writeStrings(JsonGenerator generator, String fieldName,
+      List<? extends CharSequence> values) throws IOException {
+    generator.writeFieldName(fieldName);
+    if (values == null) {
+      generator.writeNull();
+      return;
+    }
+    generator.writeStartArray();
+    for (CharSequence value : values) {
+      if (value != null) {
+        generator.writeString(value.toString());
+      } else {
+        generator.writeNull();
+      }
+    }
+    generator.writeEndArray();
+  }
+}
@@ -15,6 +15,7 @@
  */
 package org.kitesdk.spring.hbase.example.model.converter;
 
+import org.kitesdk.spring.hbase.example.helper.OutlinkCodec;
 import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
 import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotMeta;
 import org.springframework.core.convert.converter.Converter;
@@ -36,7 +37,11 @@ public class WebPageSnapshotMetaConverter implements
     meta.setTitle(model.getTitle());
     meta.setDescription(model.getDescription());
     meta.setKeywords(model.getKeywords());
-    meta.setOutlinks(model.getOutlinks());
+    // decoded on access, so it costs nothing unless outlinks are serialized
+    meta.setOutlinks(OutlinkCodec.decodeAll(model.getUrl(),
+        model.getOutlinks()));
+    meta.setSimHash(Long.toHexString(model.getSimHash()));
+    meta.setChanged(model.getChanged());
     return meta;
   }
 
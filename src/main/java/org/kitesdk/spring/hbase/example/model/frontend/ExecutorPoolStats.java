@@ -0,0 +1,139 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.model.frontend;
+
+/**
+ * A front end model with a point in time view of a request processing pool
+ */
+public class ExecutorPoolStats {
+
+  /**
+   * The name of the pool
+   */
+  private String name;
+
+  /**
+   * The number of threads running a task
+   */
+  private int activeThreads;
+
+  /**
+   * The current number of threads in the pool
+   */
+  private int poolSize;
+
+  /**
+   * The maximum number of threads in the pool
+   */
+  private int maxPoolSize;
+
+  /**
+   * The number of tasks waiting for a thread
+   */
+  private int queueDepth;
+
+  /**
+   * The number of tasks that can be queued before new ones are rejected
+   */
+  private int queueRemainingCapacity;
+
+  /**
+   * The number of tasks completed since startup
+   */
+  private long completedTasks;
+
+  /**
+   * The number of requests that timed out since startup
+   */
+  private long timeouts;
+
+  /**
+   * The request timeout, in ms
+   */
+  private long timeoutMs;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public int getActiveThreads() {
+    return activeThreads;
+  }
+
+  public void setActiveThreads(int activeThreads) {
+    this.activeThreads = activeThreads;
+  }
+
+  public int getPoolSize() {
+    return poolSize;
+  }
+
+  public void setPoolSize(int poolSize) {
+    this.poolSize = poolSize;
+  }
+
+  public int getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  public void setMaxPoolSize(int maxPoolSize) {
+    this.maxPoolSize = maxPoolSize;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public void setQueueDepth(int queueDepth) {
+    this.queueDepth = queueDepth;
+  }
+
+  public int getQueueRemainingCapacity() {
+    return queueRemainingCapacity;
+  }
+
+  public void setQueueRemainingCapacity(int queueRemainingCapacity) {
+    this.queueRemainingCapacity = queueRemainingCapacity;
+  }
+
+  public long getCompletedTasks() {
+    return completedTasks;
+  }
+
+  public void setCompletedTasks(long completedTasks) {
+    this.completedTasks = completedTasks;
+  }
+
+  public long getTimeouts() {
+    return timeouts;
+  }
+
+  public void setTimeouts(long timeouts) {
+    this.timeouts = timeouts;
+  }
+
+  public long getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  public void setTimeoutMs(long timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.model.frontend;
+
+import java.util.Map;
+
+/**
+ * A front end model with the snapshot statistics of a host over a time bucket
+ */
+public class HostStats {
+
+  /**
+   * The host the statistics are for
+   */
+  private String host;
+
+  /**
+   * The UTC time the bucket starts at
+   */
+  private long bucket;
+
+  /**
+   * The number of snapshots taken in the bucket
+   */
+  private long snapshotCount;
+
+  /**
+   * The average amount of time it took to fetch a page, in ms
+   */
+  private double avgFetchTimeMs;
+
+  /**
+   * The average size of a page
+   */
+  private double avgSize;
+
+  /**
+   * The number of snapshots in each page size range, keyed by the upper bound
+   * of the range
+   */
+  private Map<String, Long> sizeDistribution;
+
+  public String getHost() {
+    return host;
+  }
+
+  public void setHost(String host) {
+    this.host = host;
+  }
+
+  public long getBucket() {
+    return bucket;
+  }
+
+  public void setBucket(long bucket) {
+    this.bucket = bucket;
+  }
+
+  public long getSnapshotCount() {
+    return snapshotCount;
+  }
+
+  public void setSnapshotCount(long snapshotCount) {
+    this.snapshotCount = snapshotCount;
+  }
+
+  public double getAvgFetchTimeMs() {
+    return avgFetchTimeMs;
+  }
+
+  public void setAvgFetchTimeMs(double avgFetchTimeMs) {
+    this.avgFetchTimeMs = avgFetchTimeMs;
+  }
+
+  public double getAvgSize() {
+    return avgSize;
+  }
+
+  public void setAvgSize(double avgSize) {
+    this.avgSize = avgSize;
+  }
+
+  public Map<String, Long> getSizeDistribution() {
+    return sizeDistribution;
+  }
+
+  public void setSizeDistribution(Map<String, Long> sizeDistribution) {
+    this.sizeDistribution = sizeDistribution;
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.model.frontend;
+
+import java.util.Map;
+
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotView.Part;
+
+/**
+ * A front end view of the snapshots of many URLs, which is written as a JSON
+ * object keyed by the requested URL. URLs without a snapshot map to null.
+ */
+public class WebPageSnapshotBatchView {
+
+  private final Map<String, WebPageSnapshotModel> models;
+
+  private final Part part;
+
+  public WebPageSnapshotBatchView(Map<String, WebPageSnapshotModel> models,
+      Part part) {
+    this.models = models;
+    this.part = part;
+  }
+
+  public Map<String, WebPageSnapshotModel> getModels() {
+    return models;
+  }
+
+  public Part getPart() {
+    return part;
+  }
+}
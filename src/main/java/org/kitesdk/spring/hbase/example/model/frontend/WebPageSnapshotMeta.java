@@ -62,6 +62,16 @@ public class WebPageSnapshotMeta {
    */
   private List<String> outlinks;
 
+  /**
+   * The SimHash fingerprint of the page text, in hex
+   */
+  private String simHash;
+
+  /**
+   * Whether the page meaningfully changed since the previous snapshot
+   */
+  private boolean changed;
+
   /**
    * Get the URL of the web page.
    * 
@@ -213,4 +223,41 @@ public class WebPageSnapshotMeta {
     this.outlinks = outlinks;
   }
 
+  /**
+   * Get the SimHash fingerprint of the page text
+   * 
+   * @return The fingerprint, in hex
+   */
+  public String getSimHash() {
+    return simHash;
+  }
+
+  /**
+   * Set the SimHash fingerprint of the page text
+   * 
+   * @param simHash
+   *          The fingerprint, in hex
+   */
+  public void setSimHash(String simHash) {
+    this.simHash = simHash;
+  }
+
+  /**
+   * Get whether the page meaningfully changed since the previous snapshot
+   * 
+   * @return True if the page changed, or if there's no previous snapshot
+   */
+  public boolean isChanged() {
+    return changed;
+  }
+
+  /**
+   * Set whether the page meaningfully changed since the previous snapshot
+   * 
+   * @param changed
+   *          Whether the page changed
+   */
+  public void setChanged(boolean changed) {
+    this.changed = changed;
+  }
 }
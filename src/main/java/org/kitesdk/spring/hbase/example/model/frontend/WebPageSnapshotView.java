@@ -0,0 +1,75 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.model.frontend;
+
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+
+/**
+ * A front end view of a single WebPageSnapshotModel. Rather than copying the
+ * snapshot into a WebPageSnapshotMeta or WebPageSnapshotContent, the view
+ * holds on to the backend model, and the JSON message converter writes the
+ * fields of the selected part straight from it.
+ */
+public class WebPageSnapshotView {
+
+  /**
+   * The part of the snapshot a view exposes. The JSON written for each part is
+   * the same as for the WebPageSnapshotMeta and WebPageSnapshotContent
+   * frontend models.
+   */
+  public enum Part {
+    META, CONTENT
+  }
+
+  private final WebPageSnapshotModel model;
+
+  private final Part part;
+
+  public WebPageSnapshotView(WebPageSnapshotModel model, Part part) {
+    this.model = model;
+    this.part = part;
+  }
+
+  /**
+   * Create a view of the meta part of a snapshot.
+   * 
+   * @param model
+   *          The snapshot, which may be null
+   * @return The view, or null if the snapshot is null
+   */
+  public static WebPageSnapshotView meta(WebPageSnapshotModel model) {
+    return model != null ? new WebPageSnapshotView(model, Part.META) : null;
+  }
+
+  /**
+   * Create a view of the content part of a snapshot.
+   * 
+   * @param model
+   *          The snapshot, which may be null
+   * @return The view, or null if the snapshot is null
+   */
+  public static WebPageSnapshotView content(WebPageSnapshotModel model) {
+    return model != null ? new WebPageSnapshotView(model, Part.CONTENT) : null;
+  }
+
+  public WebPageSnapshotModel getModel() {
+    return model;
+  }
+
+  public Part getPart() {
+    return part;
+  }
+}
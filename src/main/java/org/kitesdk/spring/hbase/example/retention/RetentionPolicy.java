@@ -0,0 +1,131 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.retention;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tiered snapshot retention policy. Each tier applies to snapshots up to a
+ * maximum age, and keeps at most one snapshot per granularity bucket within
+ * it. The policy is expressed as a comma separated list of maxAge=granularity
+ * tiers in ascending age order, for example:
+ *
+ * 7d=all,30d=1h,*=1d
+ *
+ * keeps every snapshot for 7 days, then one per hour until 30 days, then one
+ * per day forever. Durations use the suffixes s, m, h and d. A granularity of
+ * "all" keeps every snapshot in the tier, and a maxAge of "*" matches any age.
+ * Snapshots older than the last tier are deleted if the policy has no "*"
+ * tier.
+ */
+public class RetentionPolicy {
+
+  /**
+   * Returned by getGranularityMs for snapshots that should all be kept.
+   */
+  public static final long KEEP_ALL = 0;
+
+  /**
+   * Returned by getGranularityMs for snapshots that no tier keeps.
+   */
+  public static final long KEEP_NONE = -1;
+
+  private static final String ALL = "all";
+  private static final String ANY_AGE = "*";
+
+  private final String spec;
+  private final List<long[]> tiers = new ArrayList<long[]>();
+
+  /**
+   * Construct a RetentionPolicy from its spec.
+   *
+   * @param spec
+   *          The policy spec, as described in the class docs.
+   */
+  public RetentionPolicy(String spec) {
+    this.spec = spec;
+    long lastMaxAge = 0;
+    for (String tier : spec.split(",")) {
+      String[] parts = tier.trim().split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid retention tier: " + tier);
+      }
+      long maxAge = ANY_AGE.equals(parts[0].trim()) ? Long.MAX_VALUE
+          : parseDuration(parts[0]);
+      long granularity = ALL.equals(parts[1].trim()) ? KEEP_ALL
+          : parseDuration(parts[1]);
+      if (maxAge <= lastMaxAge) {
+        throw new IllegalArgumentException(
+            "Retention tiers must be in ascending age order: " + spec);
+      }
+      lastMaxAge = maxAge;
+      tiers.add(new long[] { maxAge, granularity });
+    }
+  }
+
+  /**
+   * Get the granularity that snapshots of a given age are thinned to.
+   *
+   * @param ageMs
+   *          The age of the snapshot, in ms
+   * @return The bucket size in ms, KEEP_ALL or KEEP_NONE.
+   */
+  public long getGranularityMs(long ageMs) {
+    for (long[] tier : tiers) {
+      if (ageMs <= tier[0]) {
+        return tier[1];
+      }
+    }
+    return KEEP_NONE;
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+
+  private static long parseDuration(String duration) {
+    duration = duration.trim();
+    if (duration.length() < 2) {
+      throw new IllegalArgumentException("Invalid duration: " + duration);
+    }
+    long value = Long.parseLong(duration.substring(0, duration.length() - 1));
+    char unit = duration.charAt(duration.length() - 1);
+    long ms;
+    switch (unit) {
+    case 's':
+      ms = value * 1000L;
+      break;
+    case 'm':
+      ms = value * 60L * 1000L;
+      break;
+    case 'h':
+      ms = value * 60L * 60L * 1000L;
+      break;
+    case 'd':
+      ms = value * 24L * 60L * 60L * 1000L;
+      break;
+    default:
+      throw new IllegalArgumentException("Invalid duration unit: " + duration);
+    }
+    if (ms <= 0) {
+      throw new IllegalArgumentException("Duration must be positive: "
+          + duration);
+    }
+    return ms;
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.retention;
+
+/**
+ * A report of a single run of the SnapshotRetentionJob. The job thread updates
+ * it while the run is in progress, so the counters are volatile.
+ */
+public class RetentionReport {
+
+  private final String policy;
+  private final long startedAt;
+  private volatile long finishedAt;
+  private volatile long urlsScanned;
+  private volatile long rowsScanned;
+  private volatile long rowsDeleted;
+  private volatile long bytesReclaimed;
+  private volatile String error;
+
+  public RetentionReport(String policy) {
+    this.policy = policy;
+    this.startedAt = System.currentTimeMillis();
+  }
+
+  /**
+   * Get the retention policy this run enforced.
+   *
+   * @return The policy spec
+   */
+  public String getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Get the epoch time the run started at.
+   *
+   * @return The time as an epoch
+   */
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  /**
+   * Get the epoch time the run finished at.
+   *
+   * @return The time as an epoch, or 0 if the run is still in progress.
+   */
+  public long getFinishedAt() {
+    return finishedAt;
+  }
+
+  /**
+   * Get the number of distinct URLs scanned.
+   *
+   * @return The number of URLs
+   */
+  public long getUrlsScanned() {
+    return urlsScanned;
+  }
+
+  /**
+   * Get the number of snapshot rows scanned.
+   *
+   * @return The number of rows
+   */
+  public long getRowsScanned() {
+    return rowsScanned;
+  }
+
+  /**
+   * Get the number of snapshot rows deleted.
+   *
+   * @return The number of rows
+   */
+  public long getRowsDeleted() {
+    return rowsDeleted;
+  }
+
+  /**
+   * Get the estimated number of bytes reclaimed by the deleted rows. This is
+   * the size of their row keys, qualifiers and values, not including HBase
+   * cell overhead or compression.
+   *
+   * @return The number of bytes
+   */
+  public long getBytesReclaimed() {
+    return bytesReclaimed;
+  }
+
+  /**
+   * Get the error that ended the run, if it failed.
+   *
+   * @return The error message, or null.
+   */
+  public String getError() {
+    return error;
+  }
+
+  void urlScanned() {
+    urlsScanned++;
+  }
+
+  void rowScanned() {
+    rowsScanned++;
+  }
+
+  void rowDeleted(long bytes) {
+    rowsDeleted++;
+    bytesReclaimed += bytes;
+  }
+
+  void finished() {
+    finishedAt = System.currentTimeMillis();
+  }
+
+  void failed(Throwable t) {
+    error = t.toString();
+    finished();
+  }
+}
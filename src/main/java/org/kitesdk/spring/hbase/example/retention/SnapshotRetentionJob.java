@@ -0,0 +1,332 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.retention;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.kitesdk.spring.hbase.example.helper.Throttle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * A background job that enforces a RetentionPolicy on the
+ * WebPageSnapshotModel dataset.
+ *
+ * Kite's datasets can only read whole rows, which includes the large content
+ * family, so the job scans the snapshot table directly with a KeyOnlyFilter
+ * that replaces every value with its length. The URL and fetch time come from
+ * the row key, the bytes reclaimed are the sum of the key and value lengths,
+ * and rows are deleted by key, so no page body is ever sent to the job.
+ *
+ * The job walks the dataset in key order. Since the snapshots of an URL are
+ * stored together in descending timestamp order, it can thin each URL in a
+ * single pass with a SnapshotThinner: the first row seen for an URL is its most
+ * recent snapshot and is always kept, and every later row is kept only if it's
+ * the newest one seen in its retention bucket.
+ *
+ * The scan is split into chunks that end on URL boundaries, so no scanner is
+ * held open for long, and both the scan and the deletes are throttled to keep
+ * the load on the region servers predictable.
+ */
+public class SnapshotRetentionJob implements Runnable {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(SnapshotRetentionJob.class);
+
+  private static final int MAX_REPORTS = 10;
+  private static final String[] FAMILIES = { "meta", "content" };
+
+  private final String zkHost;
+  private final String zkPort;
+  private final RetentionPolicy policy;
+
+  private boolean enabled = true;
+  private String table = "webpagesnapshots";
+  private long intervalMs = TimeUnit.HOURS.toMillis(1);
+  private int chunkRows = 5000;
+  private int deleteBatchSize = 100;
+  private double scanRowsPerSecond = 2000;
+  private double deletesPerSecond = 500;
+
+  private ScheduledExecutorService scheduler;
+  private final LinkedList<RetentionReport> reports = new LinkedList<RetentionReport>();
+
+  /**
+   * Construct a SnapshotRetentionJob
+   *
+   * @param zkHost
+   *          HBase zookeeper client hostname
+   * @param zkPort
+   *          HBase zookeeper client port
+   * @param policy
+   *          The retention policy spec
+   */
+  public SnapshotRetentionJob(String zkHost, String zkPort, String policy) {
+    this.zkHost = zkHost;
+    this.zkPort = zkPort;
+    this.policy = new RetentionPolicy(policy);
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setTable(String table) {
+    this.table = table;
+  }
+
+  public void setIntervalMs(long intervalMs) {
+    this.intervalMs = intervalMs;
+  }
+
+  public void setChunkRows(int chunkRows) {
+    this.chunkRows = chunkRows;
+  }
+
+  public void setDeleteBatchSize(int deleteBatchSize) {
+    this.deleteBatchSize = deleteBatchSize;
+  }
+
+  public void setScanRowsPerSecond(double scanRowsPerSecond) {
+    this.scanRowsPerSecond = scanRowsPerSecond;
+  }
+
+  public void setDeletesPerSecond(double deletesPerSecond) {
+    this.deletesPerSecond = deletesPerSecond;
+  }
+
+  /**
+   * Schedule the job to run every intervalMs, if it's enabled.
+   */
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    scheduler = Executors
+        .newSingleThreadScheduledExecutor(new CustomizableThreadFactory(
+            "snapshot-retention-"));
+    scheduler.scheduleWithFixedDelay(this, intervalMs, intervalMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop the job. A run in progress is interrupted, and will pick up from the
+   * beginning on the next start.
+   */
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * Get the reports of the most recent runs, newest first. The first report is
+   * still being updated if a run is in progress.
+   *
+   * @return The list of reports
+   */
+  public List<RetentionReport> getReports() {
+    synchronized (reports) {
+      return new ArrayList<RetentionReport>(reports);
+    }
+  }
+
+  @Override
+  public void run() {
+    RetentionReport report = new RetentionReport(policy.toString());
+    synchronized (reports) {
+      reports.addFirst(report);
+      if (reports.size() > MAX_REPORTS) {
+        reports.removeLast();
+      }
+    }
+    try {
+      enforce(report);
+      report.finished();
+      LOG.info("Retention run deleted {} of {} snapshots, reclaiming {} bytes",
+          new Object[] { report.getRowsDeleted(), report.getRowsScanned(),
+              report.getBytesReclaimed() });
+    } catch (InterruptedException e) {
+      report.failed(e);
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      LOG.error("Retention run failed", e);
+      report.failed(e);
+    } catch (RuntimeException e) {
+      LOG.error("Retention run failed", e);
+      report.failed(e);
+    }
+  }
+
+  private void enforce(RetentionReport report) throws IOException,
+      InterruptedException {
+    Configuration config = HBaseConfiguration.create();
+    config.set("hbase.zookeeper.quorum", zkHost);
+    config.set("hbase.zookeeper.property.clientPort", zkPort);
+    HTable hTable = new HTable(config, table);
+    try {
+      enforce(hTable, report);
+    } finally {
+      hTable.close();
+    }
+  }
+
+  private void enforce(HTable hTable, RetentionReport report)
+      throws IOException, InterruptedException {
+    Throttle scanThrottle = new Throttle(scanRowsPerSecond);
+    Throttle deleteThrottle = new Throttle(deletesPerSecond);
+    List<Delete> pendingDeletes = new ArrayList<Delete>();
+    List<Long> pendingSizes = new ArrayList<Long>();
+    SnapshotThinner thinner = new SnapshotThinner(policy,
+        System.currentTimeMillis());
+
+    String lastCompletedUrl = null;
+    boolean done = false;
+    while (!done) {
+      String currentUrl = null;
+      int chunkRowsScanned = 0;
+      done = true;
+
+      ResultScanner scanner = hTable.getScanner(newScan(lastCompletedUrl));
+      try {
+        for (Result result : scanner) {
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+          byte[] row = result.getRow();
+          int urlEnd = getUrlEnd(row);
+          String url = Bytes.toString(row, 0, urlEnd);
+          if (!url.equals(currentUrl)) {
+            if (chunkRowsScanned >= chunkRows) {
+              // end the chunk on an URL boundary, and resume from here
+              done = false;
+              break;
+            }
+            currentUrl = url;
+            report.urlScanned();
+          }
+          long fetchedAt = Long.MAX_VALUE - getFetchedAtRevTs(row, urlEnd);
+          if (thinner.shouldDelete(url, fetchedAt)) {
+            pendingDeletes.add(new Delete(row));
+            pendingSizes.add(getStoredSize(result));
+            if (pendingDeletes.size() >= deleteBatchSize) {
+              deleteBatch(hTable, pendingDeletes, pendingSizes,
+                  deleteThrottle, report);
+            }
+          }
+          report.rowScanned();
+          chunkRowsScanned++;
+          scanThrottle.acquire(1);
+        }
+      } finally {
+        scanner.close();
+      }
+      lastCompletedUrl = currentUrl;
+      deleteBatch(hTable, pendingDeletes, pendingSizes, deleteThrottle,
+          report);
+    }
+  }
+
+  /**
+   * Create a scan of the snapshot rows, from the first URL after the last one
+   * that was completed, that returns the length of every value instead of the
+   * value.
+   */
+  private static Scan newScan(String lastCompletedUrl) {
+    Scan scan = new Scan();
+    if (lastCompletedUrl != null) {
+      // Every row of an URL starts with the URL's bytes and a 0x00 0x00
+      // terminator, so the URL's bytes followed by 0x00 0x01 sort after all
+      // of its rows and before the rows of any later URL.
+      scan.setStartRow(Bytes.add(Bytes.toBytes(lastCompletedUrl),
+          new byte[] { 0, 1 }));
+    }
+    for (String family : FAMILIES) {
+      scan.addFamily(Bytes.toBytes(family));
+    }
+    scan.setFilter(new KeyOnlyFilter(true));
+    scan.setCaching(1000);
+    scan.setCacheBlocks(false);
+    return scan;
+  }
+
+  private void deleteBatch(HTable hTable, List<Delete> deletes,
+      List<Long> sizes, Throttle deleteThrottle, RetentionReport report)
+      throws IOException, InterruptedException {
+    if (deletes.isEmpty()) {
+      return;
+    }
+    deleteThrottle.acquire(deletes.size());
+    hTable.delete(deletes);
+    for (Long size : sizes) {
+      report.rowDeleted(size);
+    }
+    deletes.clear();
+    sizes.clear();
+  }
+
+  /**
+   * Get the end of the URL in a Kite snapshot row key, which is the offset of
+   * the 0x00 0x00 terminator of the memcmp encoded URL. URLs never contain 0
+   * bytes.
+   */
+  static int getUrlEnd(byte[] row) {
+    int end = 0;
+    while (end < row.length && row[end] != 0) {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Get the reversed fetch timestamp from a Kite snapshot row key. It follows
+   * the URL's terminator as a memcmp encoded long: 8 big endian bytes, with the
+   * sign bit flipped so negative values sort first.
+   */
+  static long getFetchedAtRevTs(byte[] row, int urlEnd) {
+    return Bytes.toLong(row, urlEnd + 2) ^ Long.MIN_VALUE;
+  }
+
+  /**
+   * Get the stored size of a row from a KeyOnlyFilter result, in which every
+   * value was replaced by its length.
+   */
+  static long getStoredSize(Result result) {
+    long bytes = result.getRow().length;
+    for (Cell cell : result.rawCells()) {
+      bytes += cell.getQualifierLength()
+          + Bytes.toInt(cell.getValueArray(), cell.getValueOffset());
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.retention;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which snapshots a RetentionPolicy deletes, given the snapshots in
+ * dataset order: grouped by URL, and newest first within each URL. The first
+ * snapshot of an URL is its most recent one and is always kept, and every
+ * later one is kept only if it's the newest one seen in its retention bucket.
+ */
+class SnapshotThinner {
+
+  private final RetentionPolicy policy;
+  private final long now;
+  private final Set<String> keptBuckets = new HashSet<String>();
+  private String currentUrl = null;
+
+  /**
+   * Construct a SnapshotThinner
+   *
+   * @param policy
+   *          The policy to thin snapshots to
+   * @param now
+   *          The epoch time snapshot ages are relative to
+   */
+  SnapshotThinner(RetentionPolicy policy, long now) {
+    this.policy = policy;
+    this.now = now;
+  }
+
+  /**
+   * Check whether the next snapshot should be deleted.
+   *
+   * @param url
+   *          The URL of the snapshot
+   * @param fetchedAt
+   *          The epoch time the snapshot was fetched at
+   * @return true if the snapshot is surplus under the policy
+   */
+  boolean shouldDelete(String url, long fetchedAt) {
+    if (!url.equals(currentUrl)) {
+      currentUrl = url;
+      keptBuckets.clear();
+      // The first row of an URL is never deleted. It still claims its bucket.
+      claimBucket(fetchedAt);
+      return false;
+    }
+    return !claimBucket(fetchedAt);
+  }
+
+  /**
+   * Claim the retention bucket of a snapshot. Snapshots are seen newest first,
+   * so a bucket that has already been claimed holds a newer snapshot.
+   *
+   * @return false if the snapshot isn't kept
+   */
+  private boolean claimBucket(long fetchedAt) {
+    long granularity = policy.getGranularityMs(now - fetchedAt);
+    if (granularity == RetentionPolicy.KEEP_ALL) {
+      return true;
+    } else if (granularity == RetentionPolicy.KEEP_NONE) {
+      return false;
+    }
+    // tiers have different granularities, so include it in the bucket id
+    return keptBuckets.add(granularity + ":" + fetchedAt / granularity);
+  }
+}
@@ -16,24 +16,47 @@
 package org.kitesdk.spring.hbase.example.service;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Connection.Response;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.kitesdk.data.DatasetReader;
 import org.kitesdk.data.Key;
 import org.kitesdk.data.RandomAccessDataset;
+import org.kitesdk.spring.hbase.example.fetch.FetchScheduler;
+import org.kitesdk.spring.hbase.example.fetch.RetryableFetchException;
+import org.kitesdk.spring.hbase.example.filter.KnownUrlFilter;
+import org.kitesdk.spring.hbase.example.helper.RedirectTable;
+import org.kitesdk.spring.hbase.example.helper.SimHash;
+import org.kitesdk.spring.hbase.example.helper.SingleFlight;
+import org.kitesdk.spring.hbase.example.helper.WebPageParser;
 import org.kitesdk.spring.hbase.example.model.WebPageRedirectModel;
+import org.kitesdk.spring.hbase.example.model.WebPageRedirectSourceModel;
 import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+import org.kitesdk.spring.hbase.example.model.frontend.HostStats;
+import org.kitesdk.spring.hbase.example.model.frontend.SimilarPage;
 import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotContent;
 import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotMeta;
+import org.kitesdk.spring.hbase.example.similarity.SimHashIndex;
+import org.kitesdk.spring.hbase.example.stats.HostStatsAggregator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Component;
 
 /**
@@ -42,48 +65,157 @@ import org.springframework.stereotype.Component;
 @Component
 public class WebPageSnapshotService {
 
+  /**
+   * The maximum number of redirects followed when taking a snapshot
+   */
+  private static final int MAX_REDIRECTS = 20;
+
   @Autowired
   private RandomAccessDataset<WebPageSnapshotModel> webPageSnapshotModels;
 
   @Autowired
   private RandomAccessDataset<WebPageRedirectModel> webPageRedirectModels;
 
+  @Autowired
+  private RandomAccessDataset<WebPageRedirectSourceModel> webPageRedirectSourceModels;
+
+  @Autowired
+  private RedirectTable redirectTable;
+
   @Autowired
   private ConversionService conversionService;
 
+  @Autowired
+  @Qualifier("batchReadExecutor")
+  private AsyncTaskExecutor batchReadExecutor;
+
+  @Value("${snapshot.batch.max.urls}")
+  private int maxBatchSize;
+
+  @Value("${snapshot.dedup.window.ms}")
+  private long dedupWindowMs;
+
+  @Autowired
+  private SimHashIndex simHashIndex;
+
+  @Value("${snapshot.simhash.changed.distance}")
+  private int changedDistance;
+
+  @Autowired
+  private HostStatsAggregator hostStatsAggregator;
+
+  @Autowired
+  private FetchScheduler fetchScheduler;
+
+  @Autowired
+  private KnownUrlFilter knownUrlFilter;
+
+  /**
+   * Coalesces concurrent snapshots of the same URL
+   */
+  private final SingleFlight<String, WebPageSnapshotModel> snapshotFetches = new SingleFlight<String, WebPageSnapshotModel>();
+
+  /**
+   * Coalesces concurrent identical snapshot reads
+   */
+  private final SingleFlight<String, WebPageSnapshotModel> snapshotReads = new SingleFlight<String, WebPageSnapshotModel>();
+
   /**
    * Take a snapshot of an URL. This WebPageSnapshot is stored in HBase. Returns
    * the WebPageSnapshotMeta
    * 
    * If the URL is a redirect, the snapshot is stored under the final URL
-   * destination. A WebPageRedirectModel is stored in the redirect table so when
-   * fetching snapshots, we can follow the proper redirect path.
+   * destination. A WebPageRedirectModel is stored in the redirect table for
+   * every URL in the redirect chain, pointing straight at the final
+   * destination, and URLs that were redirecting to any URL in the chain are
+   * pointed at it too, so when fetching snapshots any URL resolves with a
+   * single lookup.
+   * 
+   * The snapshot is flagged as changed if its SimHash fingerprint differs from
+   * the previous snapshot's by more than a few bits, and the SimHashIndex is
+   * updated with the new fingerprint. The snapshot is also added to the
+   * statistics of its host.
+   * 
+   * Concurrent snapshots of the same URL share a single fetch. If the URL was
+   * snapshotted within the dedup window, that snapshot is returned instead of
+   * fetching the page again.
    * 
    * @param url
    *          The URL to take a snapshot of
    * @return The WebPageSnapshotMeta for the page that we snapshotted.
    * @throws IOException
    */
-  public WebPageSnapshotMeta takeSnapshot(String url) throws IOException {
-    WebPageSnapshotModel webPageSnapshotModel = fetchWebPage(url);
-    if (!webPageSnapshotModel.getUrl().equals(url)) {
-      // Url is different, so must have redirected. Store the redirect model
-      WebPageRedirectModel redirectModel = WebPageRedirectModel.newBuilder()
-          .setUrl(url).setDestinationUrl(webPageSnapshotModel.getUrl()).build();
-      webPageRedirectModels.put(redirectModel);
-    } else {
-      // If redirect exists, remove it since this URL no longer redirects
-      Key key = new Key.Builder(webPageRedirectModels).add("url", url).build();
-      WebPageRedirectModel redirectModel = webPageRedirectModels.get(key);
-      if (redirectModel != null) {
-        webPageRedirectModels.delete(key);
-      }
+  public WebPageSnapshotMeta takeSnapshot(final String url) throws IOException {
+    WebPageSnapshotModel webPageSnapshotModel;
+    try {
+      webPageSnapshotModel = snapshotFetches.execute(url,
+          new Callable<WebPageSnapshotModel>() {
+            @Override
+            public WebPageSnapshotModel call() throws IOException {
+              return fetchAndStoreWebPage(url);
+            }
+          });
+    } catch (IOException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
     }
-    webPageSnapshotModels.put(webPageSnapshotModel);
     return conversionService.convert(webPageSnapshotModel,
         WebPageSnapshotMeta.class);
   }
 
+  /**
+   * Fetch the web page from the URL and store it, along with its redirect
+   * chain, unless it was already snapshotted within the dedup window.
+   * 
+   * @param url
+   *          The URL to take a snapshot of
+   * @return The WebPageSnapshotModel that was stored, or the recent one that
+   *         was reused.
+   * @throws IOException
+   */
+  private WebPageSnapshotModel fetchAndStoreWebPage(String url)
+      throws IOException {
+    if (dedupWindowMs > 0) {
+      WebPageSnapshotModel recent = getMostRecentWebPageSnapshot(url);
+      if (recent != null
+          && recent.getFetchedAt() >= System.currentTimeMillis()
+              - dedupWindowMs) {
+        return recent;
+      }
+    }
+    List<String> redirectChain = new ArrayList<String>();
+    WebPageSnapshotModel webPageSnapshotModel = fetchWebPage(url,
+        redirectChain);
+    String destinationUrl = webPageSnapshotModel.getUrl();
+
+    // compare against the previous snapshot of the final destination, which
+    // is also the fingerprint that's currently indexed for it.
+    WebPageSnapshotModel previous = null;
+    if (knownUrlFilter.mightContain(destinationUrl)) {
+      previous = getMostRecentWebPageSnapshotAtDestination(destinationUrl);
+    }
+
+    // the URLs are added to the known URL filter before they're written, so
+    // readers never see a stored URL as unknown.
+    knownUrlFilter.add(destinationUrl);
+    for (String redirectUrl : redirectChain) {
+      knownUrlFilter.add(redirectUrl);
+    }
+    storeRedirectChain(redirectChain, destinationUrl);
+
+    long simHash = webPageSnapshotModel.getSimHash();
+    long previousSimHash = previous != null ? previous.getSimHash() : 0L;
+    webPageSnapshotModel.setChanged(previousSimHash == 0L
+        || SimHash.distance(previousSimHash, simHash) > changedDistance);
+    webPageSnapshotModels.put(webPageSnapshotModel);
+    simHashIndex.update(destinationUrl, previousSimHash, simHash);
+    hostStatsAggregator.record(webPageSnapshotModel);
+    return webPageSnapshotModel;
+  }
+
   /**
    * Get the most recent WebPageSnapshotMeta from HBase
    * 
@@ -101,16 +233,15 @@ public class WebPageSnapshotService {
   }
 
   /**
-   * Get the WebPageSnapshotMeta that was fetched at a particular timestamp from
-   * HBase
+   * Get the WebPageSnapshotMeta as of a particular timestamp from HBase, which
+   * is the most recent snapshot taken at or before that timestamp.
    * 
    * @param url
    *          The URL of the WebPageSnapshotMeta to get from HBase.
    * @param ts
-   *          The snapshot timestamp of the WebPageSnapshotMeta to get from
-   *          HBase.
+   *          The epoch timestamp to get the WebPageSnapshotMeta as of.
    * @return The WebPageSnapshotMeta, or null if one doesn't exist for this URL
-   *         at this timestamp.
+   *         at or before this timestamp.
    */
   public WebPageSnapshotMeta getWebPageSnapshotMeta(String url, long ts) {
     WebPageSnapshotModel model = this.getWebPageSnapshot(url, ts);
@@ -155,16 +286,15 @@ public class WebPageSnapshotService {
   }
 
   /**
-   * Get the WebPageSnapshotContent that was fetched at a particular timestamp
-   * from HBase
+   * Get the WebPageSnapshotContent as of a particular timestamp from HBase,
+   * which is the most recent snapshot taken at or before that timestamp.
    * 
    * @param url
    *          The URL of the WebPageSnapshotContent to get from HBase.
    * @param ts
-   *          The snapshot timestamp of the WebPageSnapshotContent to get from
-   *          HBase.
+   *          The epoch timestamp to get the WebPageSnapshotContent as of.
    * @return The WebPageSnapshotContent, or null if one doesn't exist for this
-   *         URL at this timestamp.
+   *         URL at or before this timestamp.
    */
   public WebPageSnapshotContent getWebPageSnapshotContent(String url, long ts) {
     WebPageSnapshotModel model = getWebPageSnapshot(url, ts);
@@ -191,6 +321,52 @@ public class WebPageSnapshotService {
         WebPageSnapshotContent.class);
   }
 
+  /**
+   * Find the pages that are near duplicates of the most recent snapshot of an
+   * URL, by looking up its SimHash fingerprint in the SimHashIndex.
+   * 
+   * @param url
+   *          The URL of the page to find near duplicates of
+   * @return The similar pages, closest first. The list is empty if the URL has
+   *         no snapshot.
+   */
+  public List<SimilarPage> getSimilarPages(String url) {
+    WebPageSnapshotModel model = getMostRecentWebPageSnapshot(url);
+    if (model == null) {
+      return new ArrayList<SimilarPage>();
+    }
+    return simHashIndex.findSimilar(model.getUrl(), model.getSimHash());
+  }
+
+  /**
+   * Get the snapshot statistics of a host, per time bucket, for as many of the
+   * most recent buckets as can be read.
+   * 
+   * @param host
+   *          The host to get statistics for
+   * @return The statistics of each time bucket, oldest first
+   */
+  public List<HostStats> getHostStats(String host) {
+    return convertList(hostStatsAggregator.getHostStats(host),
+        HostStats.class);
+  }
+
+  /**
+   * Get the snapshot statistics of a host, per time bucket.
+   * 
+   * @param host
+   *          The host to get statistics for
+   * @param since
+   *          The epoch timestamp to get statistics since
+   * @return The statistics of each time bucket, oldest first
+   * @throws IllegalArgumentException
+   *           If since is before the oldest bucket that can be read
+   */
+  public List<HostStats> getHostStats(String host, long since) {
+    return convertList(hostStatsAggregator.getHostStats(host, since),
+        HostStats.class);
+  }
+
   /**
    * Get the epoch timestamps for every snapshot time of an URL in HBase.
    * 
@@ -201,6 +377,9 @@ public class WebPageSnapshotService {
   public List<Long> getSnapshotTimestamps(String url) {
     url = normalizeUrl(url);
     List<Long> snapshotTimestamps = new ArrayList<Long>();
+    if (url == null) {
+      return snapshotTimestamps;
+    }
     DatasetReader<WebPageSnapshotModel> reader = null;
     try {
       reader = webPageSnapshotModels.from("url", url)
@@ -225,15 +404,183 @@ public class WebPageSnapshotService {
    * @return The WebPageSnapshotModel, or null if there are no fetches for this
    *         URL
    */
-  private WebPageSnapshotModel getMostRecentWebPageSnapshot(String url) {
-    url = normalizeUrl(url);
+  public WebPageSnapshotModel getMostRecentWebPageSnapshot(String url) {
+    String destinationUrl = normalizeUrl(url);
+    if (destinationUrl == null) {
+      return null;
+    }
+    return getMostRecentWebPageSnapshotAtDestination(destinationUrl);
+  }
+
+  /**
+   * Get the most recent WebPageSnapshotModel for many URLs from HBase. All of
+   * the redirects are resolved first with a single multi-get, and then the
+   * snapshot of each distinct destination is looked up in parallel on the
+   * batch read pool, so URLs that redirect to the same destination share a
+   * single snapshot lookup.
+   * 
+   * @param urls
+   *          The URLs to get the snapshotted pages from HBase
+   * @return A map of each requested URL to its WebPageSnapshotModel, or to
+   *         null if there are no fetches for it.
+   */
+  public Map<String, WebPageSnapshotModel> getMostRecentWebPageSnapshots(
+      List<String> urls) {
+    return getWebPageSnapshotsAtDestinations(normalizeUrls(urls),
+        new BatchLookup<WebPageSnapshotModel>() {
+          @Override
+          public WebPageSnapshotModel get(String destinationUrl) {
+            return getMostRecentWebPageSnapshotAtDestination(destinationUrl);
+          }
+        });
+  }
+
+  /**
+   * Look up the snapshot of each distinct destination in parallel on the batch
+   * read pool, and map every requested URL to the snapshot of its
+   * destination.
+   * 
+   * @param destinations
+   *          A map of each requested URL to its normalized URL, or to null if
+   *          it has never been snapshotted
+   * @param lookup
+   *          The snapshot lookup of a normalized URL
+   * @return A map of each requested URL to its WebPageSnapshotModel, or to
+   *         null if it has none.
+   */
+  private Map<String, WebPageSnapshotModel> getWebPageSnapshotsAtDestinations(
+      Map<String, String> destinations,
+      BatchLookup<WebPageSnapshotModel> lookup) {
+    Set<String> distinctDestinations = new LinkedHashSet<String>(
+        destinations.values());
+    distinctDestinations.remove(null);
+    Map<String, WebPageSnapshotModel> snapshots = batchLookup(
+        new ArrayList<String>(distinctDestinations), lookup);
+    Map<String, WebPageSnapshotModel> models = new LinkedHashMap<String, WebPageSnapshotModel>();
+    for (Entry<String, String> entry : destinations.entrySet()) {
+      models.put(entry.getKey(), entry.getValue() != null ? snapshots
+          .get(entry.getValue()) : null);
+    }
+    return models;
+  }
+
+  /**
+   * Get the most recent WebPageSnapshotModel from HBase for an URL that has
+   * already been normalized.
+   * 
+   * @param url
+   *          The normalized URL to get the snapshotted page from HBase
+   * @return The WebPageSnapshotModel, or null if there are no fetches for this
+   *         URL
+   */
+  private WebPageSnapshotModel getMostRecentWebPageSnapshotAtDestination(
+      String url) {
+    // we don't know the exact timestamp in the key, but we know since keys
+    // are in timestamp descending order that the first row for an URL will be
+    // the most recent.
+    return getFirstWebPageSnapshot(url, 0L);
+  }
+
+  /**
+   * Get the WebPageSnapshotModel as of a timestamp from HBase, which is the
+   * most recent snapshot taken at or before that timestamp.
+   * 
+   * @param url
+   *          The URL of the WebPageSnapshotModel
+   * @param ts
+   *          The epoch timestamp to get the snapshot as of
+   * @return The WebPageSnapshotModel, or null if there is no snapshot for the
+   *         URL at or before this timestamp.
+   * @throws IllegalArgumentException
+   *           If the timestamp is negative
+   */
+  public WebPageSnapshotModel getWebPageSnapshot(String url, long ts) {
+    checkTimestamp(ts);
+    // keys are in timestamp descending order, so the first row at or after
+    // the reversed timestamp is the most recent one at or before ts.
+    String destinationUrl = normalizeUrl(url);
+    if (destinationUrl == null) {
+      return null;
+    }
+    return getFirstWebPageSnapshot(destinationUrl, Long.MAX_VALUE - ts);
+  }
+
+  /**
+   * Get the WebPageSnapshotModel of many URLs as of a timestamp from HBase. The
+   * redirects are resolved with a single multi-get, and the snapshot lookups
+   * run in parallel on the batch read pool.
+   * 
+   * @param urls
+   *          The URLs of the WebPageSnapshotModels
+   * @param ts
+   *          The epoch timestamp to get the snapshots as of
+   * @return A map of each requested URL to its WebPageSnapshotModel, or to null
+   *         if it has no snapshot at or before this timestamp.
+   * @throws IllegalArgumentException
+   *           If the timestamp is negative
+   */
+  public Map<String, WebPageSnapshotModel> getWebPageSnapshots(
+      List<String> urls, final long ts) {
+    checkTimestamp(ts);
+    return getWebPageSnapshotsAtDestinations(normalizeUrls(urls),
+        new BatchLookup<WebPageSnapshotModel>() {
+          @Override
+          public WebPageSnapshotModel get(String destinationUrl) {
+            return getFirstWebPageSnapshot(destinationUrl, Long.MAX_VALUE
+                - ts);
+          }
+        });
+  }
+
+  /**
+   * Check that a timestamp to read snapshots as of can be reversed. Reversing
+   * a negative timestamp overflows, and would read the most recent snapshot
+   * instead of none.
+   * 
+   * @param ts
+   *          The epoch timestamp
+   */
+  private static void checkTimestamp(long ts) {
+    if (ts < 0) {
+      throw new IllegalArgumentException("Negative timestamp: " + ts);
+    }
+  }
+
+  /**
+   * Get the first WebPageSnapshotModel of a normalized URL at or after a
+   * reversed timestamp from HBase. Concurrent identical reads share a single
+   * scan.
+   * 
+   * @param url
+   *          The normalized URL of the WebPageSnapshotModel
+   * @param fromRevTs
+   *          The reversed timestamp to start the scan at
+   * @return The WebPageSnapshotModel, or null if there is no snapshot for the
+   *         URL at or after the reversed timestamp.
+   */
+  private WebPageSnapshotModel getFirstWebPageSnapshot(final String url,
+      final long fromRevTs) {
+    try {
+      return snapshotReads.execute(fromRevTs + " " + url,
+          new Callable<WebPageSnapshotModel>() {
+            @Override
+            public WebPageSnapshotModel call() {
+              return scanFirstWebPageSnapshot(url, fromRevTs);
+            }
+          });
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private WebPageSnapshotModel scanFirstWebPageSnapshot(String url,
+      long fromRevTs) {
     DatasetReader<WebPageSnapshotModel> reader = null;
     try {
-      // we don't know the exact timestamp in the key, but we know since keys
-      // are in timestamp descending order that the first row for an URL will be
-      // the most recent.
       reader = webPageSnapshotModels.from("url", url)
-          .from("fetchedAtRevTs", 0L).to("url", url)
+          .from("fetchedAtRevTs", fromRevTs).to("url", url)
           .to("fetchedAtRevTs", Long.MAX_VALUE).newReader();
       if (reader.hasNext()) {
         return reader.next();
@@ -247,23 +594,6 @@ public class WebPageSnapshotService {
     }
   }
 
-  /**
-   * Get the WebPageSnapshotModel from HBase
-   * 
-   * @param url
-   *          The URL of the WebPageSnapshotModel
-   * @param ts
-   *          The snapshot timestamp of the WebPageSnapshotModel
-   * @return The WebPageSnapshotModel, or null if there is no snapshot for the
-   *         URL at this timestamp.
-   */
-  private WebPageSnapshotModel getWebPageSnapshot(String url, long ts) {
-    url = normalizeUrl(url);
-    Key key = new Key.Builder(webPageSnapshotModels).add("url", url)
-        .add("fetchedAtRevTs", Long.MAX_VALUE - ts).build();
-    return webPageSnapshotModels.get(key);
-  }
-
   /**
    * Get WebPageSnapshotModels for an URL from HBase since the since param.
    * 
@@ -278,6 +608,9 @@ public class WebPageSnapshotService {
       long since) {
     url = normalizeUrl(url);
     List<WebPageSnapshotModel> models = new ArrayList<WebPageSnapshotModel>();
+    if (url == null) {
+      return models;
+    }
     DatasetReader<WebPageSnapshotModel> reader = null;
     try {
       reader = webPageSnapshotModels.from("url", url)
@@ -296,13 +629,19 @@ public class WebPageSnapshotService {
 
   /**
    * Normalize an URL, which currently only consists of returning a redirect
-   * destination if an URL is a redirect, or otherwise the passed in url.
+   * destination if an URL is a redirect, or otherwise the passed in url. Every
+   * redirect points straight at its final destination, see storeRedirectChain,
+   * so this is a single lookup. URLs the KnownUrlFilter has never seen have
+   * neither a redirect nor a snapshot, so they're answered without a lookup.
    * 
    * @param url
    *          The url to normalize
-   * @return The normalized URL;
+   * @return The normalized URL, or null if the URL has never been snapshotted.
    */
   private String normalizeUrl(String url) {
+    if (!knownUrlFilter.mightContain(url)) {
+      return null;
+    }
     // If this url is a redirect, get it's destination URL to fetch from our
     // HBase store since we store all snapshots under the final destination the
     // page lives at.
@@ -314,6 +653,151 @@ public class WebPageSnapshotService {
     }
   }
 
+  /**
+   * Normalize many URLs, resolving the redirects of all of them with a single
+   * multi-get against the redirect table. URLs the KnownUrlFilter has never
+   * seen are left out of the multi-get.
+   * 
+   * @param urls
+   *          The urls to normalize
+   * @return A map of each distinct URL, in request order, to its normalized
+   *         URL, or to null if the URL has never been snapshotted.
+   */
+  private Map<String, String> normalizeUrls(List<String> urls) {
+    checkBatchSize(urls);
+    Map<String, String> destinations = new LinkedHashMap<String, String>();
+    List<String> knownUrls = new ArrayList<String>();
+    for (String url : urls) {
+      if (!destinations.containsKey(url)) {
+        if (knownUrlFilter.mightContain(url)) {
+          destinations.put(url, url);
+          knownUrls.add(url);
+        } else {
+          destinations.put(url, null);
+        }
+      }
+    }
+    if (!knownUrls.isEmpty()) {
+      try {
+        // replacing the values of redirects keeps the request order
+        destinations.putAll(redirectTable.getDestinations(knownUrls));
+      } catch (IOException e) {
+        throw new IllegalStateException("Error resolving redirects", e);
+      }
+    }
+    return destinations;
+  }
+
+  /**
+   * Point every URL in a redirect chain straight at the chain's final
+   * destination. Each redirect is a single row, so every rewrite is atomic:
+   * readers see either the old destination or the new one.
+   * 
+   * The URLs in the chain now redirect, so URLs outside of the chain that were
+   * pointing at one of them are found through the reverse index in
+   * webPageRedirectSourceModels, and pointed at the final destination too. They
+   * are rewritten with a check and put, so a redirect that a concurrent
+   * snapshot just pointed somewhere else is left alone.
+   * 
+   * @param redirectChain
+   *          The URLs that redirected, in the order they were followed
+   * @param destinationUrl
+   *          The URL the chain ended at
+   * @throws IOException
+   */
+  private void storeRedirectChain(List<String> redirectChain,
+      String destinationUrl) throws IOException {
+    for (String url : redirectChain) {
+      WebPageRedirectModel existing = getRedirect(url);
+      if (existing == null
+          || !existing.getDestinationUrl().equals(destinationUrl)) {
+        // the source is indexed before the redirect is written, so every
+        // redirect can always be found from its destination
+        putRedirectSource(destinationUrl, url);
+        webPageRedirectModels.put(WebPageRedirectModel.newBuilder()
+            .setUrl(url).setDestinationUrl(destinationUrl).build());
+        if (existing != null) {
+          deleteRedirectSource(existing.getDestinationUrl(), url);
+        }
+      }
+    }
+    for (String url : redirectChain) {
+      repointRedirectSources(url, destinationUrl);
+    }
+    // If a redirect exists for the destination, remove it since this URL no
+    // longer redirects. This happens after the chain is written, so the chain
+    // never points at a missing destination.
+    WebPageRedirectModel destinationRedirect = getRedirect(destinationUrl);
+    if (destinationRedirect != null) {
+      Key key = new Key.Builder(webPageRedirectModels)
+          .add("url", destinationUrl).build();
+      webPageRedirectModels.delete(key);
+      deleteRedirectSource(destinationRedirect.getDestinationUrl(),
+          destinationUrl);
+    }
+  }
+
+  /**
+   * Point the URLs that redirect to an URL that now redirects itself at its
+   * final destination. Index entries whose redirect no longer points at the
+   * URL are stale, and are skipped by the check and put.
+   * 
+   * @param redirectUrl
+   *          The URL that now redirects
+   * @param destinationUrl
+   *          The final destination it redirects to
+   * @throws IOException
+   */
+  private void repointRedirectSources(String redirectUrl,
+      String destinationUrl) throws IOException {
+    for (String url : getRedirectSources(redirectUrl)) {
+      // the destination's own redirect is removed by storeRedirectChain
+      if (!url.equals(destinationUrl)) {
+        putRedirectSource(destinationUrl, url);
+        if (redirectTable.repoint(url, redirectUrl, destinationUrl)) {
+          deleteRedirectSource(redirectUrl, url);
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the URLs that redirect to a destination from the reverse index.
+   * 
+   * @param destinationUrl
+   *          The destination URL
+   * @return The URLs indexed as redirecting to it
+   */
+  private List<String> getRedirectSources(String destinationUrl) {
+    List<String> urls = new ArrayList<String>();
+    DatasetReader<WebPageRedirectSourceModel> reader = null;
+    try {
+      reader = webPageRedirectSourceModels
+          .from("destinationUrl", destinationUrl)
+          .to("destinationUrl", destinationUrl).newReader();
+      while (reader.hasNext()) {
+        urls.add(reader.next().getUrl());
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    return urls;
+  }
+
+  private void putRedirectSource(String destinationUrl, String url) {
+    webPageRedirectSourceModels.put(WebPageRedirectSourceModel.newBuilder()
+        .setDestinationUrl(destinationUrl).setUrl(url)
+        .setRedirectedAt(System.currentTimeMillis()).build());
+  }
+
+  private void deleteRedirectSource(String destinationUrl, String url) {
+    Key key = new Key.Builder(webPageRedirectSourceModels)
+        .add("destinationUrl", destinationUrl).add("url", url).build();
+    webPageRedirectSourceModels.delete(key);
+  }
+
   /**
    * Return a WebPageRedirectModel if an URL is one that redirects to a
    * different source. Otherwise, returns null.
@@ -332,80 +816,143 @@ public class WebPageSnapshotService {
    * 
    * @param url
    *          The URL to fetch the web page from
+   * @param redirectChain
+   *          A list the URLs that redirected on the way to the web page are
+   *          added to, in the order they were followed.
    * @return The WebPageSnapshotModel
    * @throws IOException
    *           Thrown if there's an issue fetching the web page.
    */
-  private WebPageSnapshotModel fetchWebPage(String url) throws IOException {
+  private WebPageSnapshotModel fetchWebPage(String url,
+      List<String> redirectChain) throws IOException {
     long fetchTime = System.currentTimeMillis();
-    Connection connection = Jsoup.connect(url);
-    Response response = connection.execute();
+    Response response = executeFollowingRedirects(url, redirectChain);
     long postFetchTime = System.currentTimeMillis();
     int timeToFetch = (int) (postFetchTime - fetchTime);
 
     Document doc = response.parse();
     String destinationUrl = response.url().toString();
-    String title = doc.title();
-    String description = getDescriptionFromDocument(doc);
-    List<String> keywords = getKeywordsFromDocument(doc);
-    List<String> outlinks = getOutlinksFromDocument(doc);
-
-    return WebPageSnapshotModel.newBuilder().setUrl(destinationUrl)
-        .setFetchedAtRevTs(Long.MAX_VALUE - fetchTime)
-        .setSize(doc.html().length()).setFetchedAt(fetchTime)
-        .setFetchTimeMs(timeToFetch).setTitle(title)
-        .setDescription(description).setKeywords(keywords)
-        .setOutlinks(outlinks).setContent(doc.html()).build();
+    return WebPageParser.parse(destinationUrl, doc, fetchTime, timeToFetch);
   }
 
   /**
-   * Parse the description out of the meta tag if one exists. Otherwise, return
-   * null
+   * Request an URL, following any redirects ourselves rather than letting
+   * Jsoup follow them, so we can capture every hop of the redirect chain.
    * 
-   * @param doc
-   *          The Document to parse
-   * @return The description if it exists in the HTML, otherwise null.
+   * @param url
+   *          The URL to request
+   * @param redirectChain
+   *          A list the URLs that redirected are added to
+   * @return The response of the final URL in the chain
+   * @throws IOException
+   *           Thrown if there's an issue fetching the web page, or the
+   *           redirects loop or don't end.
    */
-  private String getDescriptionFromDocument(Document doc) {
-    Elements metaDescriptionElements = doc.select("meta[name=description]");
-    return metaDescriptionElements.size() > 0 ? metaDescriptionElements
-        .attr("content") : "";
+  private Response executeFollowingRedirects(String url,
+      List<String> redirectChain) throws IOException {
+    String currentUrl = url;
+    for (int i = 0; i <= MAX_REDIRECTS; i++) {
+      Response response = executePolitely(currentUrl);
+      String location = response.header("Location");
+      if (response.statusCode() < 300 || response.statusCode() >= 400
+          || location == null) {
+        return response;
+      }
+      redirectChain.add(currentUrl);
+      currentUrl = new URL(new URL(currentUrl), location).toString();
+      if (redirectChain.contains(currentUrl)) {
+        throw new IOException("Redirect loop at " + currentUrl);
+      }
+    }
+    throw new IOException("Too many redirects from " + url);
   }
 
   /**
-   * Parse the keywords out of the meta tag if one exists. Otherwise, return an
-   * empty list.
+   * Fetch a single URL, without following redirects, once the FetchScheduler
+   * lets us send a request to its host. Responses telling us to slow down are
+   * reported to the scheduler and surfaced as a RetryableFetchException, and
+   * other error responses as an HttpStatusException.
    * 
-   * @param doc
-   *          The Document ot parse
-   * @return The list of keywords.
+   * @param url
+   *          The URL to fetch
+   * @return The response
+   * @throws IOException
    */
-  private List<String> getKeywordsFromDocument(Document doc) {
-    List<String> keywords = new ArrayList<String>();
-    Elements keywordsElements = doc.select("meta[name=keywords]");
-    for (Element keywordsElement : keywordsElements) {
-      for (String keyword : keywordsElement.attr("content").split(",")) {
-        keywords.add(keyword.trim());
+  private Response executePolitely(String url) throws IOException {
+    FetchScheduler.Permit permit = fetchScheduler.acquire(url);
+    try {
+      Connection connection = Jsoup.connect(url).followRedirects(false)
+          .ignoreHttpErrors(true);
+      Response response = connection.execute();
+      long retryAfterSeconds = permit.complete(response.statusCode(),
+          response.header("Retry-After"));
+      if (retryAfterSeconds > 0) {
+        throw new RetryableFetchException("Throttled by " + url + " with a "
+            + response.statusCode(), retryAfterSeconds);
       }
+      if (response.statusCode() >= 400) {
+        throw new HttpStatusException("HTTP error fetching URL",
+            response.statusCode(), url);
+      }
+      return response;
+    } finally {
+      permit.release();
     }
-    return keywords;
   }
 
   /**
-   * Parse the outlinks from a href tags in the document, and return them as a
-   * list
+   * Run a lookup for each distinct URL in parallel on the batch read pool, and
+   * wait for all of them to complete.
    * 
-   * @param doc
-   *          The document to parse
-   * @return The list of outlinks as URL strings.
+   * @param urls
+   *          The URLs to look up
+   * @param lookup
+   *          The lookup to run for each URL
+   * @return A map of each requested URL to its result, in request order.
    */
-  private List<String> getOutlinksFromDocument(Document doc) {
-    List<String> outlinks = new ArrayList<String>();
-    Elements linkElements = doc.select("a[href]");
-    for (Element linkElement : linkElements) {
-      outlinks.add(linkElement.attr("href").trim());
+  private <T> Map<String, T> batchLookup(List<String> urls,
+      final BatchLookup<T> lookup) {
+    checkBatchSize(urls);
+    Map<String, Future<T>> futures = new LinkedHashMap<String, Future<T>>();
+    for (final String url : urls) {
+      if (!futures.containsKey(url)) {
+        futures.put(url, batchReadExecutor.submit(new Callable<T>() {
+          @Override
+          public T call() {
+            return lookup.get(url);
+          }
+        }));
+      }
+    }
+    Map<String, T> results = new LinkedHashMap<String, T>();
+    for (Entry<String, Future<T>> entry : futures.entrySet()) {
+      try {
+        results.put(entry.getKey(), entry.getValue().get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted during batch lookup", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+    return results;
+  }
+
+  private void checkBatchSize(List<String> urls) {
+    if (urls.size() > maxBatchSize) {
+      throw new IllegalArgumentException("At most " + maxBatchSize
+          + " URLs can be requested at once");
     }
-    return outlinks;
+  }
+
+  /**
+   * A lookup of a single URL that's part of a batch.
+   */
+  private interface BatchLookup<T> {
+    T get(String url);
   }
 
   /**
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.similarity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.kitesdk.data.DatasetReader;
+import org.kitesdk.data.Key;
+import org.kitesdk.data.RandomAccessDataset;
+import org.kitesdk.spring.hbase.example.helper.SimHash;
+import org.kitesdk.spring.hbase.example.model.WebPageSimHashModel;
+import org.kitesdk.spring.hbase.example.model.frontend.SimilarPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A banded index of the latest SimHash fingerprint of every URL, used to find
+ * near duplicate pages without comparing their contents.
+ *
+ * Each fingerprint is split into BANDS equal width bands, and a
+ * WebPageSimHashModel row keyed by band, band value and URL is stored for each
+ * of them. Two fingerprints that differ in fewer than BANDS bits must agree
+ * exactly on at least one band, so looking up the rows that share a band value
+ * with a fingerprint finds every fingerprint within BANDS - 1 bits of it. The
+ * candidates are then filtered on their full fingerprints, which are stored in
+ * the rows.
+ *
+ * Results are approximate: at most maxCandidatesPerBand rows are read per band,
+ * so when more pages than that share a band value, some near duplicates can be
+ * missed. Lookups that hit the cap are logged.
+ */
+public class SimHashIndex {
+
+  /**
+   * The number of bands fingerprints are split into
+   */
+  public static final int BANDS = 4;
+
+  private static final Logger LOG = LoggerFactory.getLogger(SimHashIndex.class);
+
+  private final RandomAccessDataset<WebPageSimHashModel> webPageSimHashModels;
+
+  private int maxDistance = BANDS - 1;
+  private int maxCandidatesPerBand = 1000;
+
+  /**
+   * Construct a SimHashIndex
+   *
+   * @param webPageSimHashModels
+   *          The dataset the index is stored in
+   */
+  public SimHashIndex(
+      RandomAccessDataset<WebPageSimHashModel> webPageSimHashModels) {
+    this.webPageSimHashModels = webPageSimHashModels;
+  }
+
+  /**
+   * Set the maximum number of bits a fingerprint can differ in for its page to
+   * be similar. Only distances below BANDS are guaranteed to be found.
+   *
+   * @param maxDistance
+   *          The maximum hamming distance
+   */
+  public void setMaxDistance(int maxDistance) {
+    if (maxDistance < 0 || maxDistance >= BANDS) {
+      throw new IllegalArgumentException("maxDistance must be between 0 and "
+          + (BANDS - 1));
+    }
+    this.maxDistance = maxDistance;
+  }
+
+  /**
+   * Set the maximum number of rows read for each band of a lookup, which
+   * bounds the cost of lookups of very common fingerprints. Candidates past
+   * the cap aren't considered, so lookups that hit it can miss near
+   * duplicates.
+   *
+   * @param maxCandidatesPerBand
+   *          The maximum number of rows read per band
+   */
+  public void setMaxCandidatesPerBand(int maxCandidatesPerBand) {
+    this.maxCandidatesPerBand = maxCandidatesPerBand;
+  }
+
+  /**
+   * Replace the indexed fingerprint of an URL. The rows of the previous
+   * fingerprint are deleted if it changed.
+   *
+   * @param url
+   *          The URL of the page
+   * @param previousSimHash
+   *          The fingerprint that's currently indexed for the URL, or 0 if
+   *          there's none
+   * @param simHash
+   *          The new fingerprint, or 0 if the page has none
+   */
+  public void update(String url, long previousSimHash, long simHash) {
+    if (previousSimHash != 0 && previousSimHash != simHash) {
+      for (int band = 0; band < BANDS; band++) {
+        webPageSimHashModels.delete(new Key.Builder(webPageSimHashModels)
+            .add("band", band)
+            .add("bandValue", SimHash.band(previousSimHash, band, BANDS))
+            .add("url", url).build());
+      }
+    }
+    if (simHash != 0) {
+      for (int band = 0; band < BANDS; band++) {
+        webPageSimHashModels.put(WebPageSimHashModel.newBuilder()
+            .setBand(band).setBandValue(SimHash.band(simHash, band, BANDS))
+            .setUrl(url).setSimHash(simHash).build());
+      }
+    }
+  }
+
+  /**
+   * Find the pages whose fingerprints are within maxDistance bits of a
+   * fingerprint.
+   *
+   * @param url
+   *          The URL of the page the fingerprint belongs to, which is left out
+   *          of the results
+   * @param simHash
+   *          The fingerprint
+   * @return The similar pages, closest first. If a band has more than
+   *         maxCandidatesPerBand candidates, some similar pages can be missing.
+   */
+  public List<SimilarPage> findSimilar(String url, long simHash) {
+    List<SimilarPage> similarPages = new ArrayList<SimilarPage>();
+    if (simHash == 0) {
+      return similarPages;
+    }
+    Map<String, Long> candidates = new LinkedHashMap<String, Long>();
+    for (int band = 0; band < BANDS; band++) {
+      int bandValue = SimHash.band(simHash, band, BANDS);
+      DatasetReader<WebPageSimHashModel> reader = null;
+      try {
+        reader = webPageSimHashModels.from("band", band)
+            .from("bandValue", bandValue).to("band", band)
+            .to("bandValue", bandValue).newReader();
+        int read = 0;
+        while (reader.hasNext()) {
+          if (read == maxCandidatesPerBand) {
+            LOG.warn("More than {} candidates in band {} of {}, similar pages "
+                + "can be missing", new Object[] { maxCandidatesPerBand, band,
+                url });
+            break;
+          }
+          WebPageSimHashModel candidate = reader.next();
+          candidates.put(candidate.getUrl(), candidate.getSimHash());
+          read++;
+        }
+      } finally {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+    }
+    candidates.remove(url);
+
+    for (Entry<String, Long> candidate : candidates.entrySet()) {
+      int distance = SimHash.distance(simHash, candidate.getValue());
+      if (distance <= maxDistance) {
+        SimilarPage similarPage = new SimilarPage();
+        similarPage.setUrl(candidate.getKey());
+        similarPage.setDistance(distance);
+        similarPages.add(similarPage);
+      }
+    }
+    Collections.sort(similarPages, new Comparator<SimilarPage>() {
+      @Override
+      public int compare(SimilarPage a, SimilarPage b) {
+        return a.getDistance() - b.getDistance();
+      }
+    });
+    return similarPages;
+  }
+}
@@ -0,0 +1,338 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.stats;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.kitesdk.data.DatasetReader;
+import org.kitesdk.data.Key;
+import org.kitesdk.data.RandomAccessDataset;
+import org.kitesdk.spring.hbase.example.model.WebPageHostStatsModel;
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Maintains the WebPageHostStatsModel dataset, which holds snapshot counts,
+ * fetch times and page size distributions per host and time bucket, so they can
+ * be read without scanning the snapshots.
+ *
+ * Snapshots are aggregated in memory, and the aggregates are flushed to HBase
+ * as atomic counter increments every flushIntervalMs, or sooner when more than
+ * maxPendingBuckets host buckets are pending. All the snapshots of a host bucket
+ * between two flushes cost a single increment per counter, and recording a
+ * snapshot never waits on HBase. Aggregates that haven't been flushed yet are
+ * lost if the process dies, which is acceptable for statistics.
+ */
+public class HostStatsAggregator {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(HostStatsAggregator.class);
+
+  /**
+   * The counter fields of WebPageHostStatsModel, in the order they're kept in
+   * the pending aggregates.
+   */
+  private static final String[] COUNTERS = { "snapshotCount",
+      "totalFetchTimeMs", "totalSize", "sizeUpTo16k", "sizeUpTo64k",
+      "sizeUpTo256k", "sizeUpTo1m", "sizeOver1m" };
+
+  private static final int SNAPSHOT_COUNT = 0;
+  private static final int TOTAL_FETCH_TIME_MS = 1;
+  private static final int TOTAL_SIZE = 2;
+  private static final int FIRST_SIZE_BUCKET = 3;
+
+  /**
+   * The upper bounds of the size distribution buckets. Larger pages fall in
+   * the last bucket.
+   */
+  private static final int[] SIZE_BUCKET_LIMITS = { 16 * 1024, 64 * 1024,
+      256 * 1024, 1024 * 1024 };
+
+  private final RandomAccessDataset<WebPageHostStatsModel> webPageHostStatsModels;
+
+  private long bucketMs = TimeUnit.DAYS.toMillis(1);
+  private long flushIntervalMs = TimeUnit.SECONDS.toMillis(10);
+  private int maxPendingBuckets = 10000;
+  private int maxBucketsPerRead = 90;
+
+  /**
+   * Guards swapping the pending aggregates. Snapshots are recorded under the
+   * shared read lock, and flushes swap in a new map under the write lock, so
+   * no increment can land in a map that's being flushed.
+   */
+  private final ReadWriteLock pendingLock = new ReentrantReadWriteLock();
+  private ConcurrentMap<HostBucket, AtomicLongArray> pending = new ConcurrentHashMap<HostBucket, AtomicLongArray>();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * Construct a HostStatsAggregator
+   *
+   * @param webPageHostStatsModels
+   *          The dataset the statistics are kept in
+   */
+  public HostStatsAggregator(
+      RandomAccessDataset<WebPageHostStatsModel> webPageHostStatsModels) {
+    this.webPageHostStatsModels = webPageHostStatsModels;
+  }
+
+  public void setBucketMs(long bucketMs) {
+    this.bucketMs = bucketMs;
+  }
+
+  public void setFlushIntervalMs(long flushIntervalMs) {
+    this.flushIntervalMs = flushIntervalMs;
+  }
+
+  public void setMaxPendingBuckets(int maxPendingBuckets) {
+    this.maxPendingBuckets = maxPendingBuckets;
+  }
+
+  public void setMaxBucketsPerRead(int maxBucketsPerRead) {
+    this.maxBucketsPerRead = maxBucketsPerRead;
+  }
+
+  /**
+   * Start flushing the pending aggregates every flushIntervalMs.
+   */
+  public void start() {
+    scheduler = Executors
+        .newSingleThreadScheduledExecutor(new CustomizableThreadFactory(
+            "host-stats-flush-"));
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop the scheduled flushes, and flush what's still pending.
+   */
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+  /**
+   * Add a snapshot to the statistics of its host.
+   *
+   * @param model
+   *          The snapshot
+   */
+  public void record(WebPageSnapshotModel model) {
+    String host = getHost(model.getUrl());
+    if (host == null) {
+      return;
+    }
+    HostBucket hostBucket = new HostBucket(host, model.getFetchedAt()
+        - model.getFetchedAt() % bucketMs);
+
+    int pendingBuckets;
+    pendingLock.readLock().lock();
+    try {
+      AtomicLongArray counts = pending.get(hostBucket);
+      if (counts == null) {
+        AtomicLongArray newCounts = new AtomicLongArray(COUNTERS.length);
+        counts = pending.putIfAbsent(hostBucket, newCounts);
+        if (counts == null) {
+          counts = newCounts;
+        }
+      }
+      counts.incrementAndGet(SNAPSHOT_COUNT);
+      counts.addAndGet(TOTAL_FETCH_TIME_MS, model.getFetchTimeMs());
+      counts.addAndGet(TOTAL_SIZE, model.getSize());
+      counts.incrementAndGet(FIRST_SIZE_BUCKET + getSizeBucket(model.getSize()));
+      pendingBuckets = pending.size();
+    } finally {
+      pendingLock.readLock().unlock();
+    }
+
+    if (pendingBuckets > maxPendingBuckets && scheduler != null
+        && flushRequested.compareAndSet(false, true)) {
+      scheduler.execute(new Runnable() {
+        @Override
+        public void run() {
+          flush();
+        }
+      });
+    }
+  }
+
+  /**
+   * Write the pending aggregates to HBase as counter increments.
+   */
+  public synchronized void flush() {
+    flushRequested.set(false);
+    ConcurrentMap<HostBucket, AtomicLongArray> flushing;
+    pendingLock.writeLock().lock();
+    try {
+      if (pending.isEmpty()) {
+        return;
+      }
+      flushing = pending;
+      pending = new ConcurrentHashMap<HostBucket, AtomicLongArray>();
+    } finally {
+      pendingLock.writeLock().unlock();
+    }
+
+    try {
+      for (Entry<HostBucket, AtomicLongArray> entry : flushing.entrySet()) {
+        Key key = new Key.Builder(webPageHostStatsModels)
+            .add("host", entry.getKey().host)
+            .add("bucket", entry.getKey().bucket).build();
+        AtomicLongArray counts = entry.getValue();
+        for (int i = 0; i < COUNTERS.length; i++) {
+          if (counts.get(i) != 0) {
+            webPageHostStatsModels.increment(key, COUNTERS[i], counts.get(i));
+          }
+        }
+      }
+      LOG.debug("Flushed the statistics of {} host buckets", flushing.size());
+    } catch (RuntimeException e) {
+      LOG.error("Error flushing host statistics, dropping "
+          + flushing.size() + " host buckets", e);
+    }
+  }
+
+  /**
+   * Get the statistics of a host, for the last maxBucketsPerRead buckets,
+   * including the current one.
+   *
+   * @param host
+   *          The host
+   * @return The statistics of each bucket, oldest first
+   */
+  public List<WebPageHostStatsModel> getHostStats(String host) {
+    return getHostStats(host, getOldestReadableBucket());
+  }
+
+  /**
+   * Get the statistics of a host, for the buckets from the one containing a
+   * time on. Only the last maxBucketsPerRead buckets, including the current
+   * one, can be read, so the cost of a read is bounded no matter how many
+   * snapshots the host has.
+   *
+   * @param host
+   *          The host
+   * @param since
+   *          The epoch time to get statistics since
+   * @return The statistics of each bucket, oldest first
+   * @throws IllegalArgumentException
+   *           If since is in a bucket before the last maxBucketsPerRead
+   */
+  public List<WebPageHostStatsModel> getHostStats(String host, long since) {
+    long oldestBucket = getOldestReadableBucket();
+    long fromBucket = since - since % bucketMs;
+    if (since < 0 || fromBucket < oldestBucket) {
+      throw new IllegalArgumentException("Statistics are only kept readable "
+          + "for the last " + maxBucketsPerRead + " buckets, since must be at "
+          + "or after " + oldestBucket);
+    }
+    List<WebPageHostStatsModel> stats = new ArrayList<WebPageHostStatsModel>();
+    String hostKey = host.toLowerCase(Locale.ENGLISH);
+    DatasetReader<WebPageHostStatsModel> reader = null;
+    try {
+      reader = webPageHostStatsModels.from("host", hostKey)
+          .from("bucket", fromBucket).to("host", hostKey)
+          .to("bucket", Long.MAX_VALUE).newReader();
+      while (reader.hasNext() && stats.size() < maxBucketsPerRead) {
+        stats.add(reader.next());
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    return stats;
+  }
+
+  private long getOldestReadableBucket() {
+    long now = System.currentTimeMillis();
+    return now - now % bucketMs - (long) (maxBucketsPerRead - 1) * bucketMs;
+  }
+
+  private static int getSizeBucket(int size) {
+    for (int i = 0; i < SIZE_BUCKET_LIMITS.length; i++) {
+      if (size <= SIZE_BUCKET_LIMITS[i]) {
+        return i;
+      }
+    }
+    return SIZE_BUCKET_LIMITS.length;
+  }
+
+  private static String getHost(String url) {
+    try {
+      String host = new URL(url).getHost();
+      return host.length() > 0 ? host.toLowerCase(Locale.ENGLISH) : null;
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
+  /**
+   * The key of the pending aggregates of a host over a time bucket.
+   */
+  private static class HostBucket {
+
+    private final String host;
+    private final long bucket;
+
+    HostBucket(String host, long bucket) {
+      this.host = host;
+      this.bucket = bucket;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof HostBucket)) {
+        return false;
+      }
+      HostBucket other = (HostBucket) o;
+      return bucket == other.bucket && host.equals(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * host.hashCode() + (int) (bucket ^ (bucket >>> 32));
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.warc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of a single WARC import. Counters are updated by the import
+ * pipeline threads and read by the frontend, so they are all thread safe.
+ */
+public class WarcImportProgress {
+
+  public enum State {
+    QUEUED, RUNNING, COMPLETED, FAILED
+  }
+
+  private final String file;
+  private volatile State state = State.QUEUED;
+  private volatile String error;
+  private volatile long startedAt;
+  private volatile long finishedAt;
+  private volatile long resumedFromRecord;
+  private final AtomicLong recordsRead = new AtomicLong();
+  private final AtomicLong recordsCommitted = new AtomicLong();
+  private final AtomicLong snapshotsImported = new AtomicLong();
+  private final AtomicLong recordsSkipped = new AtomicLong();
+  private final AtomicLong recordsFailed = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  public WarcImportProgress(String file) {
+    this.file = file;
+  }
+
+  /**
+   * Get the name of the archive being imported.
+   *
+   * @return The archive file name
+   */
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * Get the state of the import.
+   *
+   * @return The state
+   */
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * Get the error that failed the import, if it failed.
+   *
+   * @return The error message, or null.
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * Get the epoch time the import started at.
+   *
+   * @return The time as an epoch, or 0 if it hasn't started.
+   */
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  /**
+   * Get the epoch time the import finished at.
+   *
+   * @return The time as an epoch, or 0 if it hasn't finished.
+   */
+  public long getFinishedAt() {
+    return finishedAt;
+  }
+
+  /**
+   * Get the number of records that were already committed by a previous run
+   * of this import, and were skipped when resuming.
+   *
+   * @return The number of records
+   */
+  public long getResumedFromRecord() {
+    return resumedFromRecord;
+  }
+
+  /**
+   * Get the number of WARC records read in this run.
+   *
+   * @return The number of records
+   */
+  public long getRecordsRead() {
+    return recordsRead.get();
+  }
+
+  /**
+   * Get the number of records, including resumed ones, whose writes have been
+   * flushed and checkpointed.
+   *
+   * @return The number of records
+   */
+  public long getRecordsCommitted() {
+    return recordsCommitted.get();
+  }
+
+  /**
+   * Get the number of snapshots written in this run.
+   *
+   * @return The number of snapshots
+   */
+  public long getSnapshotsImported() {
+    return snapshotsImported.get();
+  }
+
+  /**
+   * Get the number of records in this run that weren't successful HTML
+   * responses.
+   *
+   * @return The number of records
+   */
+  public long getRecordsSkipped() {
+    return recordsSkipped.get();
+  }
+
+  /**
+   * Get the number of records in this run that were skipped because they
+   * couldn't be parsed, for example because of a malformed WARC-Date.
+   *
+   * @return The number of records
+   */
+  public long getRecordsFailed() {
+    return recordsFailed.get();
+  }
+
+  /**
+   * Get the number of uncompressed archive bytes read in this run.
+   *
+   * @return The number of bytes
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * Get the average number of records read per second in this run.
+   *
+   * @return The throughput in records per second
+   */
+  public double getRecordsPerSecond() {
+    long elapsedMs = getElapsedMs();
+    return elapsedMs > 0 ? recordsRead.get() * 1000.0 / elapsedMs : 0;
+  }
+
+  /**
+   * Get the average number of bytes read per second in this run.
+   *
+   * @return The throughput in bytes per second
+   */
+  public double getBytesPerSecond() {
+    long elapsedMs = getElapsedMs();
+    return elapsedMs > 0 ? bytesRead.get() * 1000.0 / elapsedMs : 0;
+  }
+
+  private long getElapsedMs() {
+    if (startedAt == 0) {
+      return 0;
+    }
+    long end = finishedAt != 0 ? finishedAt : System.currentTimeMillis();
+    return end - startedAt;
+  }
+
+  void started(long resumedFromRecord) {
+    this.resumedFromRecord = resumedFromRecord;
+    this.recordsCommitted.set(resumedFromRecord);
+    this.startedAt = System.currentTimeMillis();
+    this.state = State.RUNNING;
+  }
+
+  void completed() {
+    this.finishedAt = System.currentTimeMillis();
+    this.state = State.COMPLETED;
+  }
+
+  void failed(Throwable t) {
+    this.error = t.toString();
+    this.finishedAt = System.currentTimeMillis();
+    this.state = State.FAILED;
+  }
+
+  void recordRead(long bytesRead) {
+    this.recordsRead.incrementAndGet();
+    this.bytesRead.set(bytesRead);
+  }
+
+  void recordSkipped() {
+    recordsSkipped.incrementAndGet();
+  }
+
+  long recordFailed() {
+    return recordsFailed.incrementAndGet();
+  }
+
+  void batchCommitted(long recordsThrough, int snapshots) {
+    recordsCommitted.set(recordsThrough);
+    snapshotsImported.addAndGet(snapshots);
+  }
+}
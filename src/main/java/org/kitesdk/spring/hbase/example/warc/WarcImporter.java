@@ -0,0 +1,593 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.kitesdk.data.DatasetWriter;
+import org.kitesdk.data.RandomAccessDataset;
+import org.kitesdk.spring.hbase.example.filter.KnownUrlFilter;
+import org.kitesdk.spring.hbase.example.helper.WebPageParser;
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Imports existing crawl archives in WARC format into the WebPageSnapshotModel
+ * dataset.
+ *
+ * Each import is a pipeline: the job thread streams records from the archive
+ * and groups them into batches, a pool of parser threads runs every batch
+ * through the same metadata extraction live fetches use, and a single writer
+ * thread writes the parsed batches in archive order. The queue between the
+ * parsers and the writer is bounded, so reading blocks when the writer falls
+ * behind.
+ *
+ * After each batch is flushed, the number of committed records is
+ * checkpointed, so a failed or interrupted import resumes where it left off
+ * when the same archive is submitted again.
+ */
+public class WarcImporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WarcImporter.class);
+
+  private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+  private static final String RECORDS_PROPERTY = "records";
+  private static final String WARC_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+  // WARC 1.0 dates are to the second, WARC 1.1 ones can have a fraction
+  private static final Pattern WARC_DATE_PATTERN = Pattern
+      .compile("(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2})"
+          + "(?:\\.(\\d{1,9}))?Z");
+  // parse failures past this many per import are only counted
+  private static final int MAX_LOGGED_FAILURES = 10;
+
+  private final RandomAccessDataset<WebPageSnapshotModel> webPageSnapshotModels;
+  private final File importDir;
+  private final File checkpointDir;
+
+  private int parserThreads = 4;
+  private int batchSize = 500;
+  private int maxPendingBatches = 8;
+  private int maxRecordSize = 10 * 1024 * 1024;
+  private long reportIntervalMs = 10000;
+  private KnownUrlFilter knownUrlFilter;
+
+  private final ExecutorService jobExecutor = Executors
+      .newSingleThreadExecutor(new CustomizableThreadFactory("warc-import-"));
+  private final Map<String, WarcImportProgress> imports = new LinkedHashMap<String, WarcImportProgress>();
+
+  /**
+   * Construct a WarcImporter
+   *
+   * @param webPageSnapshotModels
+   *          The dataset to import snapshots into
+   * @param importDir
+   *          The directory archives are imported from
+   * @param checkpointDir
+   *          The directory import checkpoints are stored in
+   */
+  public WarcImporter(
+      RandomAccessDataset<WebPageSnapshotModel> webPageSnapshotModels,
+      String importDir, String checkpointDir) {
+    this.webPageSnapshotModels = webPageSnapshotModels;
+    this.importDir = new File(importDir);
+    this.checkpointDir = new File(checkpointDir);
+  }
+
+  public void setParserThreads(int parserThreads) {
+    this.parserThreads = parserThreads;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public void setMaxPendingBatches(int maxPendingBatches) {
+    this.maxPendingBatches = maxPendingBatches;
+  }
+
+  public void setMaxRecordSize(int maxRecordSize) {
+    this.maxRecordSize = maxRecordSize;
+  }
+
+  public void setReportIntervalMs(long reportIntervalMs) {
+    this.reportIntervalMs = reportIntervalMs;
+  }
+
+  /**
+   * Set the KnownUrlFilter that imported URLs are added to.
+   *
+   * @param knownUrlFilter
+   *          The KnownUrlFilter, or null
+   */
+  public void setKnownUrlFilter(KnownUrlFilter knownUrlFilter) {
+    this.knownUrlFilter = knownUrlFilter;
+  }
+
+  /**
+   * Queue an archive in the import directory for import. Imports run one at a
+   * time in the order they were submitted. If the archive is already queued or
+   * running, its current progress is returned.
+   *
+   * @param fileName
+   *          The name of the archive in the import directory
+   * @return The progress of the import
+   */
+  public WarcImportProgress submit(String fileName) {
+    if (fileName.contains("/") || fileName.contains("\\")
+        || fileName.startsWith(".")) {
+      throw new IllegalArgumentException("Invalid archive name: " + fileName);
+    }
+    final File file = new File(importDir, fileName);
+    if (!file.isFile()) {
+      throw new IllegalArgumentException("No such archive: " + fileName);
+    }
+
+    synchronized (imports) {
+      WarcImportProgress existing = imports.get(fileName);
+      if (existing != null
+          && (existing.getState() == WarcImportProgress.State.QUEUED || existing
+              .getState() == WarcImportProgress.State.RUNNING)) {
+        return existing;
+      }
+      final WarcImportProgress progress = new WarcImportProgress(fileName);
+      imports.put(fileName, progress);
+      jobExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            importWarc(file, progress);
+            progress.completed();
+          } catch (Throwable t) {
+            LOG.error("Import of " + file + " failed", t);
+            progress.failed(t);
+          }
+        }
+      });
+      return progress;
+    }
+  }
+
+  /**
+   * Get the progress of every import submitted since startup.
+   *
+   * @return The list of import progress
+   */
+  public List<WarcImportProgress> getImports() {
+    synchronized (imports) {
+      return new ArrayList<WarcImportProgress>(imports.values());
+    }
+  }
+
+  /**
+   * Stop running imports. They can be resumed from their last checkpoint.
+   */
+  public void shutdown() {
+    jobExecutor.shutdownNow();
+  }
+
+  private void importWarc(File file, WarcImportProgress progress)
+      throws Exception {
+    long committed = readCheckpoint(file);
+    BlockingQueue<PendingBatch> pending = new ArrayBlockingQueue<PendingBatch>(
+        maxPendingBatches);
+    ExecutorService parsePool = Executors.newFixedThreadPool(parserThreads,
+        new CustomizableThreadFactory("warc-parser-"));
+    BatchWriter batchWriter = new BatchWriter(file, progress, pending);
+    Thread writerThread = new Thread(batchWriter, "warc-writer");
+    WarcReader reader = new WarcReader(file, maxRecordSize);
+    try {
+      for (long i = 0; i < committed; i++) {
+        if (!reader.skip()) {
+          break;
+        }
+      }
+      // the bytes skipped to resume weren't imported in this run
+      long resumedAtByte = reader.getBytesRead();
+      progress.started(committed);
+      LOG.info("Importing {}, resuming after {} records", file, committed);
+      writerThread.start();
+
+      long recordNumber = committed;
+      List<WarcRecord> batch = new ArrayList<WarcRecord>(batchSize);
+      WarcRecord record;
+      while ((record = reader.next()) != null) {
+        recordNumber++;
+        progress.recordRead(reader.getBytesRead() - resumedAtByte);
+        if (record.getBlock() != null) {
+          batch.add(record);
+        } else {
+          progress.recordSkipped();
+        }
+        if (batch.size() >= batchSize) {
+          enqueue(pending, new PendingBatch(parsePool.submit(new ParseTask(
+              batch, progress)), recordNumber, false), batchWriter);
+          batch = new ArrayList<WarcRecord>(batchSize);
+        }
+      }
+      enqueue(pending, new PendingBatch(parsePool.submit(new ParseTask(batch,
+          progress)), recordNumber, true), batchWriter);
+
+      writerThread.join();
+      if (batchWriter.failure != null) {
+        throw new IOException("Error writing snapshots", batchWriter.failure);
+      }
+      LOG.info("Imported {} snapshots from {} records of {}", new Object[] {
+          progress.getSnapshotsImported(), progress.getRecordsRead(), file });
+      if (progress.getRecordsFailed() > 0) {
+        LOG.warn("{} records of {} couldn't be parsed and were skipped",
+            progress.getRecordsFailed(), file);
+      }
+    } finally {
+      writerThread.interrupt();
+      parsePool.shutdownNow();
+      reader.close();
+    }
+  }
+
+  /**
+   * Hand a batch to the writer, blocking while the writer is behind. Gives up
+   * if the writer has failed, since it will never drain the queue.
+   */
+  private void enqueue(BlockingQueue<PendingBatch> pending,
+      PendingBatch batch, BatchWriter batchWriter) throws IOException,
+      InterruptedException {
+    while (!pending.offer(batch, 1, TimeUnit.SECONDS)) {
+      if (batchWriter.failure != null) {
+        throw new IOException("Error writing snapshots", batchWriter.failure);
+      }
+    }
+  }
+
+  /**
+   * Parse a WARC response record into a WebPageSnapshotModel.
+   *
+   * @return The WebPageSnapshotModel, or null if the record isn't a successful
+   *         HTML response.
+   */
+  private WebPageSnapshotModel parseRecord(WarcRecord record)
+      throws IOException, ParseException {
+    String url = record.getTargetUri();
+    String warcDate = record.getHeader("WARC-Date");
+    byte[] block = record.getBlock();
+    if (url == null || warcDate == null) {
+      return null;
+    }
+
+    // The block is the raw HTTP response: a status line and headers, followed
+    // by a blank line and the body.
+    int headerEnd = indexOfBlankLine(block);
+    if (headerEnd < 0) {
+      return null;
+    }
+    String[] headerLines = new String(block, 0, headerEnd, "ISO-8859-1")
+        .split("\r?\n");
+    String[] statusLine = headerLines[0].split(" ");
+    if (statusLine.length < 2 || !statusLine[1].equals("200")) {
+      return null;
+    }
+    Map<String, String> headers = new LinkedHashMap<String, String>();
+    for (int i = 1; i < headerLines.length; i++) {
+      int idx = headerLines[i].indexOf(':');
+      if (idx > 0) {
+        headers.put(
+            headerLines[i].substring(0, idx).trim().toLowerCase(Locale.ENGLISH),
+            headerLines[i].substring(idx + 1).trim());
+      }
+    }
+    String contentType = headers.get("content-type");
+    if (contentType == null
+        || !(contentType.startsWith("text/html") || contentType
+            .startsWith("application/xhtml"))) {
+      return null;
+    }
+
+    int bodyStart = block[headerEnd] == '\r' ? headerEnd + 4 : headerEnd + 2;
+    InputStream body = new ByteArrayInputStream(block, bodyStart, block.length
+        - bodyStart);
+    if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+      body = dechunk(body);
+    }
+    if ("gzip".equalsIgnoreCase(headers.get("content-encoding"))) {
+      body = new GZIPInputStream(body);
+    }
+
+    // a null charset lets Jsoup detect it from the document's meta tags
+    Document doc = Jsoup.parse(body, getCharset(contentType), url);
+    long fetchedAt = parseWarcDate(warcDate);
+    // the archive doesn't record how long the original fetch took
+    return WebPageParser.parse(url, doc, fetchedAt, 0);
+  }
+
+  /**
+   * Parse a WARC-Date, which is UTC to the second, or in WARC 1.1 optionally
+   * to a fraction of a second.
+   *
+   * @param warcDate
+   *          The WARC-Date header value
+   * @return The date as an epoch, truncated to the millisecond
+   * @throws ParseException
+   *           If the date isn't in either form
+   */
+  static long parseWarcDate(String warcDate) throws ParseException {
+    Matcher matcher = WARC_DATE_PATTERN.matcher(warcDate.trim());
+    if (!matcher.matches()) {
+      throw new ParseException("Invalid WARC-Date: " + warcDate, 0);
+    }
+    SimpleDateFormat dateFormat = new SimpleDateFormat(WARC_DATE_FORMAT,
+        Locale.ENGLISH);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    dateFormat.setLenient(false);
+    long date = dateFormat.parse(matcher.group(1)).getTime();
+    String fraction = matcher.group(2);
+    if (fraction != null) {
+      date += Integer.parseInt((fraction + "00").substring(0, 3));
+    }
+    return date;
+  }
+
+  private static int indexOfBlankLine(byte[] block) {
+    for (int i = 0; i < block.length - 1; i++) {
+      if (block[i] == '\n' && block[i + 1] == '\n') {
+        return i;
+      }
+      if (i < block.length - 3 && block[i] == '\r' && block[i + 1] == '\n'
+          && block[i + 2] == '\r' && block[i + 3] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String getCharset(String contentType) {
+    for (String param : contentType.split(";")) {
+      param = param.trim();
+      if (param.toLowerCase(Locale.ENGLISH).startsWith("charset=")) {
+        return param.substring("charset=".length()).replace("\"", "").trim();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Decode an HTTP body sent with chunked transfer encoding.
+   *
+   * @param in
+   *          The chunked body
+   * @return The decoded body
+   */
+  static InputStream dechunk(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    while (true) {
+      StringBuilder sizeLine = new StringBuilder();
+      int b;
+      while ((b = in.read()) != -1 && b != '\n') {
+        if (b != '\r') {
+          sizeLine.append((char) b);
+        }
+      }
+      String size = sizeLine.toString().trim();
+      int extension = size.indexOf(';');
+      if (extension >= 0) {
+        size = size.substring(0, extension);
+      }
+      if (b == -1 || size.length() == 0) {
+        break;
+      }
+      int chunkSize = Integer.parseInt(size, 16);
+      if (chunkSize == 0) {
+        break;
+      }
+      byte[] chunk = new byte[chunkSize];
+      int read = in.read(chunk);
+      if (read <= 0) {
+        break;
+      }
+      out.write(chunk, 0, read);
+      // skip the CRLF that terminates the chunk
+      in.read();
+      in.read();
+    }
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  private File getCheckpointFile(File file) {
+    return new File(checkpointDir, file.getName() + CHECKPOINT_SUFFIX);
+  }
+
+  private long readCheckpoint(File file) throws IOException {
+    File checkpointFile = getCheckpointFile(file);
+    if (!checkpointFile.exists()) {
+      return 0;
+    }
+    Properties checkpoint = new Properties();
+    InputStream in = new FileInputStream(checkpointFile);
+    try {
+      checkpoint.load(in);
+    } finally {
+      in.close();
+    }
+    return Long.parseLong(checkpoint.getProperty(RECORDS_PROPERTY, "0"));
+  }
+
+  private void writeCheckpoint(File file, long records) throws IOException {
+    if (!checkpointDir.exists() && !checkpointDir.mkdirs()) {
+      throw new IOException("Unable to create " + checkpointDir);
+    }
+    Properties checkpoint = new Properties();
+    checkpoint.setProperty(RECORDS_PROPERTY, Long.toString(records));
+    // write then rename, so a crash never leaves a partial checkpoint behind
+    File checkpointFile = getCheckpointFile(file);
+    File tmpFile = new File(checkpointDir, checkpointFile.getName() + ".tmp");
+    OutputStream out = new FileOutputStream(tmpFile);
+    try {
+      checkpoint.store(out, file.getAbsolutePath());
+    } finally {
+      out.close();
+    }
+    if (!tmpFile.renameTo(checkpointFile)) {
+      checkpointFile.delete();
+      if (!tmpFile.renameTo(checkpointFile)) {
+        throw new IOException("Unable to write checkpoint " + checkpointFile);
+      }
+    }
+  }
+
+  /**
+   * A batch of records being parsed, and the number of archive records that
+   * are committed once it's written.
+   */
+  private static class PendingBatch {
+
+    private final Future<List<WebPageSnapshotModel>> models;
+    private final long recordsThrough;
+    private final boolean last;
+
+    PendingBatch(Future<List<WebPageSnapshotModel>> models,
+        long recordsThrough, boolean last) {
+      this.models = models;
+      this.recordsThrough = recordsThrough;
+      this.last = last;
+    }
+  }
+
+  /**
+   * Parses a batch of records on the parser pool. Records that can't be parsed
+   * are counted as failed and skipped, rather than failing the import.
+   */
+  private class ParseTask implements Callable<List<WebPageSnapshotModel>> {
+
+    private final List<WarcRecord> records;
+    private final WarcImportProgress progress;
+
+    ParseTask(List<WarcRecord> records, WarcImportProgress progress) {
+      this.records = records;
+      this.progress = progress;
+    }
+
+    @Override
+    public List<WebPageSnapshotModel> call() {
+      List<WebPageSnapshotModel> models = new ArrayList<WebPageSnapshotModel>(
+          records.size());
+      for (WarcRecord record : records) {
+        WebPageSnapshotModel model = null;
+        try {
+          model = parseRecord(record);
+        } catch (Exception e) {
+          if (progress.recordFailed() <= MAX_LOGGED_FAILURES) {
+            LOG.warn("Unable to parse record for " + record.getTargetUri(), e);
+          }
+          continue;
+        }
+        if (model != null) {
+          models.add(model);
+        } else {
+          progress.recordSkipped();
+        }
+      }
+      return models;
+    }
+  }
+
+  /**
+   * Writes parsed batches in archive order, flushing and checkpointing after
+   * each one.
+   */
+  private class BatchWriter implements Runnable {
+
+    private final File file;
+    private final WarcImportProgress progress;
+    private final BlockingQueue<PendingBatch> pending;
+    private volatile Throwable failure;
+
+    BatchWriter(File file, WarcImportProgress progress,
+        BlockingQueue<PendingBatch> pending) {
+      this.file = file;
+      this.progress = progress;
+      this.pending = pending;
+    }
+
+    @Override
+    public void run() {
+      DatasetWriter<WebPageSnapshotModel> writer = null;
+      try {
+        writer = webPageSnapshotModels.newWriter();
+        long lastReport = System.currentTimeMillis();
+        PendingBatch batch;
+        do {
+          batch = pending.take();
+          List<WebPageSnapshotModel> models = batch.models.get();
+          for (WebPageSnapshotModel model : models) {
+            if (knownUrlFilter != null) {
+              knownUrlFilter.add(model.getUrl());
+            }
+            writer.write(model);
+          }
+          writer.flush();
+          writeCheckpoint(file, batch.recordsThrough);
+          progress.batchCommitted(batch.recordsThrough, models.size());
+
+          long now = System.currentTimeMillis();
+          if (now - lastReport >= reportIntervalMs) {
+            lastReport = now;
+            LOG.info(String.format(
+                "%s: %d records committed, %d snapshots imported, "
+                    + "%.1f records/s, %.2f MB/s", file.getName(),
+                progress.getRecordsCommitted(),
+                progress.getSnapshotsImported(),
+                progress.getRecordsPerSecond(),
+                progress.getBytesPerSecond() / (1024 * 1024)));
+          }
+        } while (!batch.last);
+      } catch (Throwable t) {
+        failure = t;
+      } finally {
+        if (writer != null) {
+          writer.close();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.warc;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A streaming reader for WARC archives. Records are read one at a time, so
+ * archives of any size can be read in constant memory. Archives ending in
+ * ".gz" are decompressed on the fly.
+ */
+public class WarcReader implements Closeable {
+
+  private static final String WARC_VERSION_PREFIX = "WARC/";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream in;
+  private final int maxBlockSize;
+  private long bytesRead = 0;
+
+  /**
+   * Open a WARC archive for reading.
+   *
+   * @param file
+   *          The archive to read
+   * @param maxBlockSize
+   *          Blocks larger than this many bytes are skipped rather than loaded
+   * @throws IOException
+   */
+  public WarcReader(File file, int maxBlockSize) throws IOException {
+    InputStream fileIn = new FileInputStream(file);
+    if (file.getName().endsWith(".gz")) {
+      fileIn = new GZIPInputStream(fileIn, BUFFER_SIZE);
+    }
+    this.in = new BufferedInputStream(fileIn, BUFFER_SIZE);
+    this.maxBlockSize = maxBlockSize;
+  }
+
+  /**
+   * Read the next record. The block is loaded only if it's a response record
+   * that fits in maxBlockSize.
+   *
+   * @return The next record, or null at the end of the archive.
+   * @throws IOException
+   */
+  public WarcRecord next() throws IOException {
+    return read(true);
+  }
+
+  /**
+   * Skip the next record without loading its block.
+   *
+   * @return false if there were no more records to skip.
+   * @throws IOException
+   */
+  public boolean skip() throws IOException {
+    return read(false) != null;
+  }
+
+  /**
+   * Get the number of uncompressed bytes read so far.
+   *
+   * @return The number of bytes
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private WarcRecord read(boolean loadBlock) throws IOException {
+    String versionLine = readLine();
+    // records are separated by blank lines, so skip over any before the header
+    while (versionLine != null && versionLine.length() == 0) {
+      versionLine = readLine();
+    }
+    if (versionLine == null) {
+      return null;
+    }
+    if (!versionLine.startsWith(WARC_VERSION_PREFIX)) {
+      throw new IOException("Invalid WARC record header: " + versionLine);
+    }
+
+    Map<String, String> headers = new HashMap<String, String>();
+    String line = readLine();
+    while (line != null && line.length() > 0) {
+      int idx = line.indexOf(':');
+      if (idx > 0) {
+        headers.put(line.substring(0, idx).trim().toLowerCase(Locale.ENGLISH),
+            line.substring(idx + 1).trim());
+      }
+      line = readLine();
+    }
+
+    String contentLengthHeader = headers.get("content-length");
+    if (contentLengthHeader == null) {
+      throw new IOException("WARC record is missing Content-Length");
+    }
+    long contentLength = Long.parseLong(contentLengthHeader);
+
+    byte[] block = null;
+    if (loadBlock && contentLength <= maxBlockSize
+        && "response".equals(headers.get("warc-type"))) {
+      block = new byte[(int) contentLength];
+      readFully(block);
+    } else {
+      skipFully(contentLength);
+    }
+    return new WarcRecord(headers, contentLength, block);
+  }
+
+  private String readLine() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    int b = in.read();
+    if (b == -1) {
+      return null;
+    }
+    long lineBytes = 1;
+    while (b != -1 && b != '\n') {
+      if (b != '\r') {
+        line.write(b);
+      }
+      b = in.read();
+      lineBytes++;
+    }
+    // count the bytes as read, including carriage returns
+    bytesRead += b == -1 ? lineBytes - 1 : lineBytes;
+    return line.toString("ISO-8859-1");
+  }
+
+  private void readFully(byte[] buffer) throws IOException {
+    int offset = 0;
+    while (offset < buffer.length) {
+      int read = in.read(buffer, offset, buffer.length - offset);
+      if (read == -1) {
+        throw new EOFException("Truncated WARC record");
+      }
+      offset += read;
+    }
+    bytesRead += buffer.length;
+  }
+
+  private void skipFully(long length) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      long skipped = in.skip(remaining);
+      if (skipped <= 0) {
+        if (in.read() == -1) {
+          throw new EOFException("Truncated WARC record");
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+    bytesRead += length;
+  }
+}
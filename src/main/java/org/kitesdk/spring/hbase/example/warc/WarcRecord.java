@@ -0,0 +1,84 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.warc;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A single record read from a WARC archive. The block is only populated for
+ * records the reader was asked to load; it is null for skipped records.
+ */
+public class WarcRecord {
+
+  private final Map<String, String> headers;
+  private final long contentLength;
+  private final byte[] block;
+
+  public WarcRecord(Map<String, String> headers, long contentLength,
+      byte[] block) {
+    this.headers = headers;
+    this.contentLength = contentLength;
+    this.block = block;
+  }
+
+  /**
+   * Get a WARC header value. Header names are case insensitive.
+   *
+   * @param name
+   *          The header name
+   * @return The header value, or null if the header isn't present.
+   */
+  public String getHeader(String name) {
+    return headers.get(name.toLowerCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Get the WARC-Type of this record, ie: response, request, warcinfo.
+   *
+   * @return The record type
+   */
+  public String getType() {
+    return getHeader("WARC-Type");
+  }
+
+  /**
+   * Get the URI that was captured in this record.
+   *
+   * @return The target URI
+   */
+  public String getTargetUri() {
+    return getHeader("WARC-Target-URI");
+  }
+
+  /**
+   * Get the length of the record block in bytes.
+   *
+   * @return The block length
+   */
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Get the record block.
+   *
+   * @return The block bytes, or null if the block was skipped.
+   */
+  public byte[] getBlock() {
+    return block;
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.controller;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitesdk.spring.hbase.example.service.WebPageSnapshotService;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+public class WebPageSnapshotControllerTest {
+
+  private static final long TIMEOUT_MS = 10000;
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private ThreadPoolTaskExecutor fetchExecutor;
+  private ThreadPoolTaskExecutor storageExecutor;
+  private MockMvc mockMvc;
+
+  @Before
+  public void setUp() {
+    fetchExecutor = newExecutor();
+    storageExecutor = newExecutor();
+    WebPageSnapshotController controller = new WebPageSnapshotController();
+    ReflectionTestUtils.setField(controller, "webPageSnapshotService",
+        new WebPageSnapshotService() {
+          @Override
+          public List<Long> getSnapshotTimestamps(String url) {
+            return Arrays.asList(2L, 1L);
+          }
+        });
+    ReflectionTestUtils.setField(controller, "fetchExecutor", fetchExecutor);
+    ReflectionTestUtils.setField(controller, "storageExecutor",
+        storageExecutor);
+    ReflectionTestUtils.setField(controller, "fetchTimeoutMs", TIMEOUT_MS);
+    ReflectionTestUtils.setField(controller, "storageTimeoutMs", TIMEOUT_MS);
+    controller.initPools();
+    mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    fetchExecutor.shutdown();
+    storageExecutor.shutdown();
+  }
+
+  @Test
+  public void testRequestRunsOnPool() throws Exception {
+    mockMvc.perform(get("/snapshotTimestamps").param("url", "http://a.com/"))
+        .andExpect(request().asyncStarted())
+        .andExpect(request().asyncResult(Arrays.asList(2L, 1L)));
+  }
+
+  @Test
+  public void testSaturatedPoolIsBusyImmediately() throws Exception {
+    // one running and one queued task fill the storage pool
+    storageExecutor.execute(blocker());
+    storageExecutor.execute(blocker());
+
+    long start = System.currentTimeMillis();
+    mockMvc.perform(get("/snapshotTimestamps").param("url", "http://a.com/"))
+        .andExpect(request().asyncNotStarted())
+        .andExpect(status().isServiceUnavailable());
+    assertTrue("The request is rejected without waiting for the timeout",
+        System.currentTimeMillis() - start < TIMEOUT_MS / 2);
+  }
+
+  @Test
+  public void testSaturatedPoolDoesNotBlockOtherPool() throws Exception {
+    fetchExecutor.execute(blocker());
+    fetchExecutor.execute(blocker());
+
+    mockMvc.perform(get("/snapshotTimestamps").param("url", "http://a.com/"))
+        .andExpect(request().asyncStarted())
+        .andExpect(request().asyncResult(Arrays.asList(2L, 1L)));
+  }
+
+  private static ThreadPoolTaskExecutor newExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(1);
+    executor.setMaxPoolSize(1);
+    executor.setQueueCapacity(1);
+    executor.initialize();
+    return executor;
+  }
+
+  private Runnable blocker() {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+}
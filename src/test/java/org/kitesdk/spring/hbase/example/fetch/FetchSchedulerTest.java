@@ -0,0 +1,202 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.fetch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class FetchSchedulerTest {
+
+  @Test
+  public void testCrawlDelay() {
+    assertEquals(2000L, FetchScheduler.parseCrawlDelayMs("User-agent: *\n"
+        + "Disallow: /private\n" + "Crawl-delay: 2\n"));
+  }
+
+  @Test
+  public void testFractionalCrawlDelay() {
+    assertEquals(500L, FetchScheduler.parseCrawlDelayMs("user-agent: *\r\n"
+        + "CRAWL-DELAY: 0.5 # half a second\r\n"));
+  }
+
+  @Test
+  public void testCrawlDelayOfOtherAgentsIsIgnored() {
+    assertEquals(0L, FetchScheduler.parseCrawlDelayMs("User-agent: Googlebot\n"
+        + "Crawl-delay: 10\n"));
+    assertEquals(3000L, FetchScheduler.parseCrawlDelayMs(
+        "User-agent: Googlebot\n" + "Crawl-delay: 10\n" + "\n"
+            + "User-agent: *\n" + "Crawl-delay: 3\n"));
+  }
+
+  @Test
+  public void testUserAgentLinesShareAGroup() {
+    assertEquals(4000L, FetchScheduler.parseCrawlDelayMs(
+        "User-agent: Googlebot\n" + "User-agent: *\n" + "Crawl-delay: 4\n"));
+    assertEquals(4000L, FetchScheduler.parseCrawlDelayMs("User-agent: *\n"
+        + "User-agent: Googlebot\n" + "Crawl-delay: 4\n"));
+    assertEquals("A rule ends the group", 0L,
+        FetchScheduler.parseCrawlDelayMs("User-agent: *\n"
+            + "Disallow: /private\n" + "User-agent: Googlebot\n"
+            + "Crawl-delay: 4\n"));
+  }
+
+  @Test
+  public void testNoOrInvalidCrawlDelay() {
+    assertEquals(0L, FetchScheduler.parseCrawlDelayMs(""));
+    assertEquals(0L, FetchScheduler.parseCrawlDelayMs("User-agent: *\n"
+        + "Disallow: /\n"));
+    assertEquals(0L, FetchScheduler.parseCrawlDelayMs("User-agent: *\n"
+        + "Crawl-delay: soon\n"));
+    assertEquals(0L, FetchScheduler.parseCrawlDelayMs("User-agent: *\n"
+        + "# Crawl-delay: 5\n"));
+  }
+
+  @Test
+  public void testRetryAfterSeconds() {
+    assertEquals(120000L, FetchScheduler.parseRetryAfterMs("120"));
+    assertEquals(120000L, FetchScheduler.parseRetryAfterMs(" 120 "));
+    assertEquals(0L, FetchScheduler.parseRetryAfterMs("-5"));
+  }
+
+  @Test
+  public void testRetryAfterDate() {
+    SimpleDateFormat format = new SimpleDateFormat(
+        "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    String inAMinute = format.format(new Date(
+        System.currentTimeMillis() + 60000));
+    long retryAfterMs = FetchScheduler.parseRetryAfterMs(inAMinute);
+    assertTrue("Got " + retryAfterMs, retryAfterMs > 55000
+        && retryAfterMs <= 60000);
+    assertEquals("Dates in the past don't wait", 0L,
+        FetchScheduler.parseRetryAfterMs("Wed, 21 Oct 2015 07:28:00 GMT"));
+  }
+
+  @Test
+  public void testMissingOrInvalidRetryAfter() {
+    assertEquals(-1L, FetchScheduler.parseRetryAfterMs(null));
+    assertEquals(-1L, FetchScheduler.parseRetryAfterMs("later"));
+  }
+
+  @Test
+  public void testReserveWaitsForTokens() {
+    FetchScheduler scheduler = new FetchScheduler();
+    scheduler.setRequestsPerSecond(1);
+    scheduler.setBurst(2);
+    FetchScheduler.HostState host = scheduler.getHostState("http://a");
+    long now = System.currentTimeMillis();
+    assertEquals(0L, host.reserve(now, 0, now + 10000));
+    assertEquals(0L, host.reserve(now, 0, now + 10000));
+    assertEquals(1000L, host.reserve(now, 0, now + 10000));
+    assertEquals(2000L, host.reserve(now, 0, now + 10000));
+  }
+
+  @Test
+  public void testReserveRefills() {
+    FetchScheduler scheduler = new FetchScheduler();
+    scheduler.setRequestsPerSecond(1);
+    scheduler.setBurst(1);
+    FetchScheduler.HostState host = scheduler.getHostState("http://a");
+    long now = System.currentTimeMillis();
+    assertEquals(0L, host.reserve(now, 0, now + 10000));
+    assertEquals(500L, host.reserve(now + 500, 0, now + 10000));
+    assertEquals("Tokens don't accumulate past the burst", 0L,
+        host.reserve(now + 60000, 0, now + 70000));
+    assertEquals(1000L, host.reserve(now + 60000, 0, now + 70000));
+  }
+
+  @Test
+  public void testReservePastDeadline() {
+    FetchScheduler scheduler = new FetchScheduler();
+    scheduler.setRequestsPerSecond(1);
+    scheduler.setBurst(1);
+    FetchScheduler.HostState host = scheduler.getHostState("http://a");
+    long now = System.currentTimeMillis();
+    assertEquals(0L, host.reserve(now, 0, now + 10000));
+    assertEquals(-1000L, host.reserve(now, 0, now + 500));
+    assertEquals("No token is taken past the deadline", 1000L,
+        host.reserve(now, 0, now + 1000));
+  }
+
+  @Test
+  public void testReserveHonorsCrawlDelay() {
+    FetchScheduler scheduler = new FetchScheduler();
+    scheduler.setRequestsPerSecond(10);
+    scheduler.setBurst(4);
+    FetchScheduler.HostState host = scheduler.getHostState("http://a");
+    long now = System.currentTimeMillis();
+    assertEquals(0L, host.reserve(now, 5000, now + 10000));
+    assertEquals("The crawl delay allows no burst", 5000L,
+        host.reserve(now, 5000, now + 10000));
+  }
+
+  @Test
+  public void testBackOff() {
+    FetchScheduler scheduler = new FetchScheduler();
+    scheduler.setRequestsPerSecond(1);
+    scheduler.setBurst(1);
+    FetchScheduler.HostState host = scheduler.getHostState("http://a");
+    long now = System.currentTimeMillis();
+    assertEquals(30000L, host.backOff(now, 30000, 5000, 600000));
+    assertEquals(-30000L, host.reserve(now, 0, now + 10000));
+    assertEquals(30000L, host.reserve(now, 0, now + 60000));
+  }
+
+  @Test
+  public void testBackOffWithoutRetryAfterGrows() {
+    FetchScheduler scheduler = new FetchScheduler();
+    FetchScheduler.HostState host = scheduler.getHostState("http://a");
+    long now = System.currentTimeMillis();
+    assertEquals(5000L, host.backOff(now, -1, 5000, 15000));
+    assertEquals(10000L, host.backOff(now, -1, 5000, 15000));
+    assertEquals(15000L, host.backOff(now, -1, 5000, 15000));
+    host.recover();
+    assertEquals(5000L, host.backOff(now, -1, 5000, 15000));
+  }
+
+  @Test
+  public void testIdleHostsAreEvicted() {
+    FetchScheduler scheduler = new FetchScheduler();
+    scheduler.setMaxTrackedHosts(2);
+    FetchScheduler.HostState backedOff = scheduler.getHostState("http://a");
+    backedOff.backOff(System.currentTimeMillis(), 60000, 5000, 600000);
+    FetchScheduler.HostState idle = scheduler.getHostState("http://b");
+    FetchScheduler.HostState added = scheduler.getHostState("http://c");
+    assertEquals(2, scheduler.getTrackedHosts());
+    assertSame(backedOff, scheduler.getHostState("http://a"));
+    assertSame(added, scheduler.getHostState("http://c"));
+    assertNotSame(idle, scheduler.getHostState("http://b"));
+  }
+
+  @Test
+  public void testEvictionIsBounded() {
+    FetchScheduler scheduler = new FetchScheduler();
+    scheduler.setMaxTrackedHosts(100);
+    for (int i = 0; i < 10000; i++) {
+      scheduler.getHostState("http://host" + i);
+    }
+    assertEquals(100, scheduler.getTrackedHosts());
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class OutlinkCodecTest {
+
+  private static final String ORIGIN = "http://www.example.com";
+
+  @Test
+  public void testNormalize() {
+    assertEquals("http://www.example.com/a?b=1",
+        OutlinkCodec.normalize("HTTP://WWW.Example.COM/a?b=1"));
+    assertEquals("Paths are case sensitive", "http://www.example.com/A",
+        OutlinkCodec.normalize("http://www.example.com/A"));
+    assertEquals("http://www.example.com/",
+        OutlinkCodec.normalize("http://www.example.com"));
+    assertEquals("http://www.example.com/a",
+        OutlinkCodec.normalize("http://www.example.com/a#section"));
+  }
+
+  @Test
+  public void testNormalizePorts() {
+    assertEquals("http://www.example.com/",
+        OutlinkCodec.normalize("http://www.example.com:80/"));
+    assertEquals("https://www.example.com/",
+        OutlinkCodec.normalize("https://www.example.com:443/"));
+    assertEquals("http://www.example.com:8080/",
+        OutlinkCodec.normalize("http://www.example.com:8080/"));
+  }
+
+  @Test
+  public void testNormalizeInvalid() {
+    assertNull(OutlinkCodec.normalize(null));
+    assertNull(OutlinkCodec.normalize(""));
+    assertNull(OutlinkCodec.normalize("/relative"));
+    assertNull(OutlinkCodec.normalize("mailto:someone@example.com"));
+    assertNull(OutlinkCodec.normalize("javascript:void(0)"));
+    assertNull(OutlinkCodec.normalize("ftp://www.example.com/file"));
+  }
+
+  @Test
+  public void testGetOrigin() {
+    assertEquals(ORIGIN, OutlinkCodec.getOrigin("http://www.example.com/a/b"));
+    assertEquals("https://www.example.com:8443",
+        OutlinkCodec.getOrigin("HTTPS://www.EXAMPLE.com:8443/a?b"));
+    assertNull(OutlinkCodec.getOrigin("not a url"));
+  }
+
+  @Test
+  public void testSameOriginLinksAreRelative() {
+    assertEquals("/a/b?c=d",
+        OutlinkCodec.encode(ORIGIN, "http://www.example.com/a/b?c=d"));
+    assertEquals("/", OutlinkCodec.encode(ORIGIN, "http://www.example.com/"));
+  }
+
+  @Test
+  public void testCrossOriginLinksAreAbsolute() {
+    assertEquals("http://other.example.com/a",
+        OutlinkCodec.encode(ORIGIN, "http://other.example.com/a"));
+    assertEquals("Different scheme", "https://www.example.com/a",
+        OutlinkCodec.encode(ORIGIN, "https://www.example.com/a"));
+    assertEquals("Different port", "http://www.example.com:8080/a",
+        OutlinkCodec.encode(ORIGIN, "http://www.example.com:8080/a"));
+    assertEquals("Host with the origin as a prefix",
+        "http://www.example.com.evil.org/a",
+        OutlinkCodec.encode(ORIGIN, "http://www.example.com.evil.org/a"));
+    assertEquals("No origin", "http://www.example.com/a",
+        OutlinkCodec.encode(null, "http://www.example.com/a"));
+  }
+
+  @Test
+  public void testRoundTrip() {
+    String pageUrl = "http://www.example.com/index.html";
+    String origin = OutlinkCodec.getOrigin(pageUrl);
+    for (String outlink : Arrays.asList("http://www.example.com/",
+        "http://www.example.com/a/b?c=d", "https://www.example.com/",
+        "http://www.example.com:8080/a", "http://other.example.com/a?b",
+        "http://www.example.com.evil.org/")) {
+      String normalized = OutlinkCodec.normalize(outlink);
+      assertEquals(normalized, OutlinkCodec.decode(origin,
+          OutlinkCodec.encode(origin, normalized)));
+    }
+  }
+
+  @Test
+  public void testDecodeLegacyLinks() {
+    assertEquals("Protocol relative", "http://cdn.example.com/a",
+        OutlinkCodec.decode(ORIGIN, "//cdn.example.com/a"));
+    assertEquals("https://cdn.example.com/a", OutlinkCodec.decode(
+        "https://www.example.com", "//cdn.example.com/a"));
+    assertEquals("Unknown origin", "/a", OutlinkCodec.decode(null, "/a"));
+  }
+
+  @Test
+  public void testDecodeAll() {
+    List<String> encoded = new ArrayList<String>();
+    encoded.add("/a");
+    encoded.add("http://other.example.com/b");
+    List<String> decoded = OutlinkCodec.decodeAll(
+        "http://www.example.com/page", encoded);
+    assertEquals(Arrays.asList("http://www.example.com/a",
+        "http://other.example.com/b"), decoded);
+    assertNull(OutlinkCodec.decodeAll("http://www.example.com/", null));
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class RedirectTableTest {
+
+  @Test
+  public void testToRowKey() {
+    assertArrayEquals(Bytes.add(Bytes.toBytes("http://a.com/"), new byte[] {
+        0, 0 }), RedirectTable.toRowKey("http://a.com/"));
+  }
+
+  @Test
+  public void testToRowKeyEscapesZeroBytes() {
+    assertArrayEquals(new byte[] { 'a', 0, 1, 'b', 0, 0 },
+        RedirectTable.toRowKey("a\u0000b"));
+  }
+
+  @Test
+  public void testRowKeysSortLikeUrls() {
+    // a prefix of an URL must sort before it
+    assertEquals(-1, Integer.signum(Bytes.compareTo(
+        RedirectTable.toRowKey("http://a.com"),
+        RedirectTable.toRowKey("http://a.com/"))));
+  }
+
+  @Test
+  public void testEncodeString() throws IOException {
+    // a zig zag varint length, then the UTF-8 bytes
+    assertArrayEquals(new byte[] { 6, 'a', 'b', 'c' },
+        RedirectTable.encodeString("abc"));
+    assertArrayEquals(new byte[] { 0 }, RedirectTable.encodeString(""));
+  }
+
+  @Test
+  public void testDecodeString() throws IOException {
+    assertEquals("http://a.com/", RedirectTable.decodeString(RedirectTable
+        .encodeString("http://a.com/")));
+    assertEquals("", RedirectTable.decodeString(new byte[] { 0 }));
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class SimHashTest {
+
+  private static final String TEXT = "The quick brown fox jumps over the lazy "
+      + "dog while the cat sleeps in the warm afternoon sun by the window";
+
+  @Test
+  public void testDistance() {
+    assertEquals(0, SimHash.distance(0x1234L, 0x1234L));
+    assertEquals(1, SimHash.distance(0L, 1L));
+    assertEquals(64, SimHash.distance(0L, -1L));
+    assertEquals(2, SimHash.distance(0x8000000000000000L, 1L));
+  }
+
+  @Test
+  public void testBand() {
+    long simHash = 0x123456789abcdef0L;
+    assertEquals(0xdef0, SimHash.band(simHash, 0, 4));
+    assertEquals(0x9abc, SimHash.band(simHash, 1, 4));
+    assertEquals(0x5678, SimHash.band(simHash, 2, 4));
+    assertEquals(0x1234, SimHash.band(simHash, 3, 4));
+    assertEquals(0xf0, SimHash.band(simHash, 0, 8));
+    assertEquals(0x12, SimHash.band(simHash, 7, 8));
+  }
+
+  @Test
+  public void testBandsAreNonNegative() {
+    for (int band = 0; band < 4; band++) {
+      assertEquals(0xffff, SimHash.band(-1L, band, 4));
+    }
+  }
+
+  @Test
+  public void testSameTextSameFingerprint() {
+    assertEquals(SimHash.compute(TEXT), SimHash.compute(TEXT));
+  }
+
+  @Test
+  public void testCaseAndPunctuationAreIgnored() {
+    assertEquals(SimHash.compute(TEXT),
+        SimHash.compute(TEXT.toUpperCase(Locale.ENGLISH)));
+    assertEquals(SimHash.compute(TEXT),
+        SimHash.compute("  " + TEXT.replace(" ", ", ") + "!"));
+  }
+
+  @Test
+  public void testNoWords() {
+    assertEquals(0L, SimHash.compute(""));
+    assertEquals(0L, SimHash.compute(" ... ,, !"));
+  }
+
+  @Test
+  public void testSingleWord() {
+    assertTrue(SimHash.compute("hello") != 0L);
+  }
+
+  @Test
+  public void testNearDuplicatesAreClose() {
+    long simHash = SimHash.compute(TEXT);
+    int nearDistance = SimHash.distance(simHash,
+        SimHash.compute(TEXT + " today"));
+    int farDistance = SimHash.distance(simHash,
+        SimHash.compute("Completely unrelated words about HBase region "
+            + "servers, compactions and write ahead logs on a cluster"));
+    assertTrue("Near " + nearDistance + ", far " + farDistance,
+        nearDistance < farDistance);
+    assertTrue("Near " + nearDistance, nearDistance <= 10);
+  }
+
+  @Test
+  public void testIndependentOfDefaultLocale() {
+    String text = "TITLE INDEX OF IMAGES";
+    long simHash = SimHash.compute(text);
+    Locale defaultLocale = Locale.getDefault();
+    try {
+      // lower cases I to a dotless i
+      Locale.setDefault(new Locale("tr", "TR"));
+      assertEquals(simHash, SimHash.compute(text));
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(CALLERS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testConcurrentCallsAreCoalesced() throws Exception {
+    final CountDownLatch allJoined = new CountDownLatch(CALLERS - 1);
+    final SingleFlight<String, String> singleFlight = newSingleFlight(allJoined);
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<String> operation = new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        calls.incrementAndGet();
+        release.await();
+        return "result";
+      }
+    };
+
+    List<Future<String>> results = new ArrayList<Future<String>>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return singleFlight.execute("key", operation);
+        }
+      }));
+    }
+    // the first caller is blocked in the operation until every other one
+    // has joined it
+    assertTrue(allJoined.await(5, TimeUnit.SECONDS));
+    release.countDown();
+
+    for (Future<String> result : results) {
+      assertEquals("result", result.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testDifferentKeysAreNotCoalesced() throws Exception {
+    final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+    final CountDownLatch bothRunning = new CountDownLatch(2);
+    List<Future<String>> results = new ArrayList<Future<String>>();
+    for (final String key : new String[] { "a", "b" }) {
+      results.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return singleFlight.execute(key, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+              bothRunning.countDown();
+              // only completes if the other key runs concurrently
+              if (!bothRunning.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Keys were serialized");
+              }
+              return key;
+            }
+          });
+        }
+      }));
+    }
+    assertEquals("a", results.get(0).get(10, TimeUnit.SECONDS));
+    assertEquals("b", results.get(1).get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSequentialCallsRunAgain() throws Exception {
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+    final AtomicInteger calls = new AtomicInteger();
+    Callable<Integer> operation = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return calls.incrementAndGet();
+      }
+    };
+    assertEquals(Integer.valueOf(1), singleFlight.execute("key", operation));
+    assertEquals(Integer.valueOf(2), singleFlight.execute("key", operation));
+  }
+
+  @Test
+  public void testExceptionIsSharedWithWaiters() throws Exception {
+    final CountDownLatch allJoined = new CountDownLatch(CALLERS - 1);
+    final SingleFlight<String, String> singleFlight = newSingleFlight(allJoined);
+    final IOException failure = new IOException("fetch failed");
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<String> operation = new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        release.await();
+        throw failure;
+      }
+    };
+
+    List<Future<String>> results = new ArrayList<Future<String>>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          try {
+            singleFlight.execute("key", operation);
+            return "no exception";
+          } catch (IOException e) {
+            assertSame(failure, e);
+            return e.getMessage();
+          }
+        }
+      }));
+    }
+    assertTrue(allJoined.await(5, TimeUnit.SECONDS));
+    release.countDown();
+
+    for (Future<String> result : results) {
+      assertEquals("fetch failed", result.get(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testKeyIsReleasedAfterException() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+    try {
+      singleFlight.execute("key", new Callable<String>() {
+        @Override
+        public String call() {
+          throw new IllegalStateException("failed");
+        }
+      });
+      fail("Expected the exception to propagate");
+    } catch (IllegalStateException e) {
+      assertEquals("failed", e.getMessage());
+    }
+    assertEquals("recovered", singleFlight.execute("key",
+        new Callable<String>() {
+          @Override
+          public String call() {
+            return "recovered";
+          }
+        }));
+  }
+
+  @Test(expected = AssertionError.class)
+  public void testErrorIsRethrown() throws Exception {
+    new SingleFlight<String, String>().execute("key", new Callable<String>() {
+      @Override
+      public String call() {
+        throw new AssertionError("error");
+      }
+    });
+  }
+
+  /**
+   * Create a SingleFlight that counts down a latch whenever a caller joins a
+   * call in flight.
+   */
+  private static SingleFlight<String, String> newSingleFlight(
+      final CountDownLatch joined) {
+    return new SingleFlight<String, String>() {
+      @Override
+      protected void joined(String key) {
+        joined.countDown();
+      }
+    };
+  }
+}
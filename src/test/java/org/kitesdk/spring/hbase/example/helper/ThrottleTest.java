@@ -0,0 +1,73 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ThrottleTest {
+
+  @Test
+  public void testDisabled() throws InterruptedException {
+    Throttle throttle = new Throttle(0);
+    long start = System.nanoTime();
+    throttle.acquire(1000000);
+    throttle.acquire(1000000);
+    assertTrue(elapsedMs(start) < 100);
+  }
+
+  @Test
+  public void testPaces() throws InterruptedException {
+    Throttle throttle = new Throttle(100);
+    long start = System.nanoTime();
+    for (int i = 0; i < 21; i++) {
+      throttle.acquire(1);
+    }
+    // the first permit is free, and the other 20 take 10 ms each
+    long elapsedMs = elapsedMs(start);
+    assertTrue("Took " + elapsedMs + " ms", elapsedMs >= 190);
+  }
+
+  @Test
+  public void testPermitsAreWeighted() throws InterruptedException {
+    Throttle throttle = new Throttle(100);
+    throttle.acquire(20);
+    long start = System.nanoTime();
+    throttle.acquire(1);
+    long elapsedMs = elapsedMs(start);
+    assertTrue("Took " + elapsedMs + " ms", elapsedMs >= 190);
+  }
+
+  @Test
+  public void testIdleTimeDoesNotAccumulate() throws InterruptedException {
+    Throttle throttle = new Throttle(100);
+    throttle.acquire(1);
+    Thread.sleep(200);
+    long start = System.nanoTime();
+    for (int i = 0; i < 11; i++) {
+      throttle.acquire(1);
+    }
+    long elapsedMs = elapsedMs(start);
+    assertTrue("Took " + elapsedMs + " ms", elapsedMs >= 90);
+  }
+
+  private static long elapsedMs(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
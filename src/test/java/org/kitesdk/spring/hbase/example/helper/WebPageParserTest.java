@@ -0,0 +1,73 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+
+public class WebPageParserTest {
+
+  private static final String URL = "http://www.example.com/dir/page.html";
+
+  @Test
+  public void testOutlinksAreResolvedAndEncoded() {
+    WebPageSnapshotModel model = parse("<a href=\"other.html\">1</a>"
+        + "<a href=\"/root\">2</a>"
+        + "<a href=\"//cdn.example.com/lib\">3</a>"
+        + "<a href=\"https://secure.example.com/\">4</a>");
+    assertEquals(Arrays.asList("/dir/other.html", "/root",
+        "http://cdn.example.com/lib", "https://secure.example.com/"),
+        model.getOutlinks());
+  }
+
+  @Test
+  public void testOutlinksAreDeduped() {
+    WebPageSnapshotModel model = parse("<a href=\"/a\">1</a>"
+        + "<a href=\"http://WWW.EXAMPLE.COM/a\">2</a>"
+        + "<a href=\"/a#top\">3</a>" + "<a href=\"/b\">4</a>"
+        + "<a href=\"http://www.example.com:80/a\">5</a>");
+    assertEquals(Arrays.asList("/a", "/b"), model.getOutlinks());
+  }
+
+  @Test
+  public void testInvalidOutlinksAreDropped() {
+    WebPageSnapshotModel model = parse("<a href=\"mailto:a@example.com\">1</a>"
+        + "<a href=\"javascript:void(0)\">2</a>" + "<a>3</a>"
+        + "<a href=\"/a\">4</a>");
+    assertEquals(Arrays.asList("/a"), model.getOutlinks());
+  }
+
+  @Test
+  public void testOutlinksDecodeToAbsoluteUrls() {
+    WebPageSnapshotModel model = parse("<a href=\"other.html\">1</a>"
+        + "<a href=\"http://other.example.com/\">2</a>");
+    assertEquals(Arrays.asList("http://www.example.com/dir/other.html",
+        "http://other.example.com/"),
+        OutlinkCodec.decodeAll(URL, model.getOutlinks()));
+  }
+
+  private static WebPageSnapshotModel parse(String body) {
+    Document doc = Jsoup.parse("<html><head><title>Test</title></head><body>"
+        + body + "</body></html>", URL);
+    return WebPageParser.parse(URL, doc, 1000L, 10);
+  }
+}
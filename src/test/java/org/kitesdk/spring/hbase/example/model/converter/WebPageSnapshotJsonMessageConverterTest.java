@@ -0,0 +1,148 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.model.converter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.kitesdk.spring.hbase.example.helper.OutlinkCodec;
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotBatchView;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotContent;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotMeta;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotView;
+import org.kitesdk.spring.hbase.example.model.frontend.WebPageSnapshotView.Part;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+/**
+ * Checks that the streamed JSON is the same as Jackson's serialization of the
+ * WebPageSnapshotMeta and WebPageSnapshotContent frontend models.
+ */
+public class WebPageSnapshotJsonMessageConverterTest {
+
+  private static final String URL = "http://www.example.com/a";
+
+  private final WebPageSnapshotJsonMessageConverter converter = new WebPageSnapshotJsonMessageConverter();
+  private final WebPageSnapshotMetaConverter metaConverter = new WebPageSnapshotMetaConverter();
+  private final WebPageSnapshotContentConverter contentConverter = new WebPageSnapshotContentConverter();
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void testMeta() throws IOException {
+    WebPageSnapshotModel model = newModel(URL, 1000L);
+    assertSameJson(mapper.writeValueAsString(metaConverter.convert(model)),
+        write(WebPageSnapshotView.meta(model)));
+  }
+
+  @Test
+  public void testMetaWithNulls() throws IOException {
+    WebPageSnapshotModel model = newModel(URL, 1000L);
+    // the builder rejects nulls, but rows written before a field was filled
+    // in can still read back as null
+    model.setTitle(null);
+    model.setDescription(null);
+    model.setKeywords(null);
+    model.setOutlinks(null);
+    assertSameJson(mapper.writeValueAsString(metaConverter.convert(model)),
+        write(WebPageSnapshotView.meta(model)));
+  }
+
+  @Test
+  public void testContent() throws IOException {
+    WebPageSnapshotModel model = newModel(URL, 1000L);
+    assertSameJson(
+        mapper.writeValueAsString(contentConverter.convert(model)),
+        write(WebPageSnapshotView.content(model)));
+  }
+
+  @Test
+  public void testBatchMeta() throws IOException {
+    Map<String, WebPageSnapshotModel> models = newBatch();
+    Map<String, WebPageSnapshotMeta> expected = new LinkedHashMap<String, WebPageSnapshotMeta>();
+    for (Map.Entry<String, WebPageSnapshotModel> entry : models.entrySet()) {
+      expected.put(entry.getKey(), entry.getValue() != null ? metaConverter
+          .convert(entry.getValue()) : null);
+    }
+    assertSameJson(mapper.writeValueAsString(expected),
+        write(new WebPageSnapshotBatchView(models, Part.META)));
+  }
+
+  @Test
+  public void testBatchContent() throws IOException {
+    Map<String, WebPageSnapshotModel> models = newBatch();
+    Map<String, WebPageSnapshotContent> expected = new LinkedHashMap<String, WebPageSnapshotContent>();
+    for (Map.Entry<String, WebPageSnapshotModel> entry : models.entrySet()) {
+      expected.put(entry.getKey(), entry.getValue() != null ? contentConverter
+          .convert(entry.getValue()) : null);
+    }
+    assertSameJson(mapper.writeValueAsString(expected),
+        write(new WebPageSnapshotBatchView(models, Part.CONTENT)));
+  }
+
+  /**
+   * Compare the parsed JSON trees, so the order of the fields doesn't matter.
+   */
+  private void assertSameJson(String expected, String actual)
+      throws IOException {
+    assertEquals(expected + " != " + actual, mapper.readTree(expected),
+        mapper.readTree(actual));
+  }
+
+  private String write(Object view) throws IOException {
+    MockHttpOutputMessage message = new MockHttpOutputMessage();
+    converter.write(view, MediaType.APPLICATION_JSON, message);
+    return message.getBodyAsString();
+  }
+
+  private static Map<String, WebPageSnapshotModel> newBatch() {
+    Map<String, WebPageSnapshotModel> models = new LinkedHashMap<String, WebPageSnapshotModel>();
+    models.put(URL, newModel(URL, 1000L));
+    models.put("http://www.example.com/missing", null);
+    // a redirected URL is keyed by the requested URL, not the destination
+    models.put("http://example.com/b", newModel("http://www.example.com/b",
+        2000L));
+    return models;
+  }
+
+  private static WebPageSnapshotModel newModel(String url, long fetchedAt) {
+    String origin = OutlinkCodec.getOrigin(url);
+    return WebPageSnapshotModel
+        .newBuilder()
+        .setUrl(url)
+        .setFetchedAtRevTs(Long.MAX_VALUE - fetchedAt)
+        .setFetchedAt(fetchedAt)
+        .setFetchTimeMs(42)
+        .setSize(1234)
+        .setTitle("A \"quoted\" title \u00e9\u4e2d")
+        .setDescription("Line one\nline two\ttabbed \\ backslash")
+        .setKeywords(Arrays.asList("one", "two \u2603"))
+        .setOutlinks(
+            Arrays.asList(OutlinkCodec.encode(origin, url + "/next"),
+                OutlinkCodec.encode(origin, "http://other.example.com/")))
+        // negative, so the hex is the unsigned form
+        .setSimHash(0xfedcba9876543210L)
+        .setChanged(false)
+        .setContent("<html><body><p class=\"x\">\u00e9 &amp; \u0001</p></body></html>")
+        .build();
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.retention;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RetentionPolicyTest {
+
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+  @Test
+  public void testTiers() {
+    RetentionPolicy policy = new RetentionPolicy("7d=all,30d=1h,*=1d");
+    assertEquals(RetentionPolicy.KEEP_ALL, policy.getGranularityMs(0));
+    assertEquals(RetentionPolicy.KEEP_ALL, policy.getGranularityMs(7 * DAY));
+    assertEquals(HOUR, policy.getGranularityMs(7 * DAY + 1));
+    assertEquals(HOUR, policy.getGranularityMs(30 * DAY));
+    assertEquals(DAY, policy.getGranularityMs(30 * DAY + 1));
+    assertEquals(DAY, policy.getGranularityMs(10000 * DAY));
+  }
+
+  @Test
+  public void testOlderThanLastTier() {
+    RetentionPolicy policy = new RetentionPolicy("1d=all,7d=1h");
+    assertEquals(HOUR, policy.getGranularityMs(7 * DAY));
+    assertEquals(RetentionPolicy.KEEP_NONE,
+        policy.getGranularityMs(7 * DAY + 1));
+  }
+
+  @Test
+  public void testDurationUnits() {
+    RetentionPolicy policy = new RetentionPolicy("1m=30s,1h=5m,1d=2h,*=1d");
+    assertEquals(TimeUnit.SECONDS.toMillis(30), policy.getGranularityMs(1));
+    assertEquals(TimeUnit.MINUTES.toMillis(5),
+        policy.getGranularityMs(TimeUnit.MINUTES.toMillis(2)));
+    assertEquals(2 * HOUR, policy.getGranularityMs(2 * HOUR));
+  }
+
+  @Test
+  public void testWhitespace() {
+    RetentionPolicy policy = new RetentionPolicy(" 7d = all , * = 1d ");
+    assertEquals(RetentionPolicy.KEEP_ALL, policy.getGranularityMs(DAY));
+    assertEquals(DAY, policy.getGranularityMs(8 * DAY));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTiersOutOfOrder() {
+    new RetentionPolicy("30d=1h,7d=all");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidTier() {
+    new RetentionPolicy("7d");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidUnit() {
+    new RetentionPolicy("7w=all");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroDuration() {
+    new RetentionPolicy("7d=0h");
+  }
+}
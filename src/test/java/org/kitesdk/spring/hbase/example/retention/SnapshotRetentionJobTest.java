@@ -0,0 +1,52 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.retention;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class SnapshotRetentionJobTest {
+
+  @Test
+  public void testParseRowKey() {
+    long fetchedAt = 1409529600000L;
+    byte[] row = row("http://a.com/", Long.MAX_VALUE - fetchedAt);
+    int urlEnd = SnapshotRetentionJob.getUrlEnd(row);
+    assertEquals("http://a.com/", Bytes.toString(row, 0, urlEnd));
+    assertEquals(Long.MAX_VALUE - fetchedAt,
+        SnapshotRetentionJob.getFetchedAtRevTs(row, urlEnd));
+  }
+
+  @Test
+  public void testParseRowKeyExtremes() {
+    byte[] row = row("http://a.com/", 0L);
+    assertEquals(0L, SnapshotRetentionJob.getFetchedAtRevTs(row,
+        SnapshotRetentionJob.getUrlEnd(row)));
+    row = row("http://a.com/", Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, SnapshotRetentionJob.getFetchedAtRevTs(row,
+        SnapshotRetentionJob.getUrlEnd(row)));
+  }
+
+  /**
+   * Build a row key the way Kite encodes the (url, fetchedAtRevTs) key.
+   */
+  private static byte[] row(String url, long fetchedAtRevTs) {
+    return Bytes.add(Bytes.toBytes(url), new byte[] { 0, 0 },
+        Bytes.toBytes(fetchedAtRevTs ^ Long.MIN_VALUE));
+  }
+}
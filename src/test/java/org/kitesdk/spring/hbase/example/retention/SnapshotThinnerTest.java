@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.retention;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SnapshotThinnerTest {
+
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+  // bucket aligned, so offsets within a bucket stay in it
+  private static final long NOW = 1000 * DAY;
+
+  private static final RetentionPolicy POLICY = new RetentionPolicy(
+      "1d=all,7d=1h,30d=1d");
+
+  @Test
+  public void testKeepAllTier() {
+    SnapshotThinner thinner = new SnapshotThinner(POLICY, NOW);
+    assertFalse(thinner.shouldDelete("http://a/", NOW - 1000));
+    assertFalse(thinner.shouldDelete("http://a/", NOW - 2000));
+    assertFalse(thinner.shouldDelete("http://a/", NOW - 3000));
+  }
+
+  @Test
+  public void testNewestPerBucketIsKept() {
+    SnapshotThinner thinner = new SnapshotThinner(POLICY, NOW);
+    long bucketStart = NOW - 3 * DAY;
+    assertFalse(thinner.shouldDelete("http://a/", NOW));
+    assertFalse(thinner.shouldDelete("http://a/", bucketStart + 50 * 60000));
+    assertTrue(thinner.shouldDelete("http://a/", bucketStart + 20 * 60000));
+    assertTrue(thinner.shouldDelete("http://a/", bucketStart));
+    assertFalse("The previous hour is a new bucket",
+        thinner.shouldDelete("http://a/", bucketStart - 1));
+  }
+
+  @Test
+  public void testTiersHaveSeparateBuckets() {
+    SnapshotThinner thinner = new SnapshotThinner(POLICY, NOW);
+    assertFalse(thinner.shouldDelete("http://a/", NOW));
+    // hourly buckets up to 7 days old, daily ones after that
+    assertFalse(thinner.shouldDelete("http://a/", NOW - 7 * DAY + HOUR));
+    assertFalse(thinner.shouldDelete("http://a/", NOW - 7 * DAY));
+    assertFalse(thinner.shouldDelete("http://a/", NOW - 7 * DAY - HOUR));
+    assertTrue(thinner.shouldDelete("http://a/", NOW - 8 * DAY + HOUR));
+    assertFalse(thinner.shouldDelete("http://a/", NOW - 8 * DAY - HOUR));
+  }
+
+  @Test
+  public void testOlderThanEveryTier() {
+    SnapshotThinner thinner = new SnapshotThinner(POLICY, NOW);
+    assertFalse(thinner.shouldDelete("http://a/", NOW));
+    assertTrue(thinner.shouldDelete("http://a/", NOW - 31 * DAY));
+  }
+
+  @Test
+  public void testFirstRowOfUrlIsKept() {
+    SnapshotThinner thinner = new SnapshotThinner(POLICY, NOW);
+    assertFalse("The most recent snapshot is kept even past every tier",
+        thinner.shouldDelete("http://a/", NOW - 40 * DAY));
+    assertTrue(thinner.shouldDelete("http://a/", NOW - 41 * DAY));
+  }
+
+  @Test
+  public void testFirstRowClaimsItsBucket() {
+    SnapshotThinner thinner = new SnapshotThinner(POLICY, NOW);
+    long bucketStart = NOW - 3 * DAY;
+    assertFalse(thinner.shouldDelete("http://a/", bucketStart + 30 * 60000));
+    assertTrue(thinner.shouldDelete("http://a/", bucketStart));
+  }
+
+  @Test
+  public void testBucketsArePerUrl() {
+    SnapshotThinner thinner = new SnapshotThinner(POLICY, NOW);
+    long bucketStart = NOW - 3 * DAY;
+    assertFalse(thinner.shouldDelete("http://a/", bucketStart + 30 * 60000));
+    assertFalse(thinner.shouldDelete("http://b/", bucketStart + 20 * 60000));
+    assertTrue(thinner.shouldDelete("http://b/", bucketStart + 10 * 60000));
+  }
+}
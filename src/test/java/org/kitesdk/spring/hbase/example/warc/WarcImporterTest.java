@@ -0,0 +1,182 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.warc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.ParseException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kitesdk.data.DatasetWriter;
+import org.kitesdk.data.RandomAccessDataset;
+import org.kitesdk.spring.hbase.example.model.WebPageSnapshotModel;
+
+public class WarcImporterTest {
+
+  private static final long SEPT_1_2014 = 1409529600000L;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testParseWarcDate() throws ParseException {
+    assertEquals(SEPT_1_2014,
+        WarcImporter.parseWarcDate("2014-09-01T00:00:00Z"));
+    assertEquals(SEPT_1_2014 + 61000,
+        WarcImporter.parseWarcDate("2014-09-01T00:01:01Z"));
+  }
+
+  @Test
+  public void testParseWarcDateWithFraction() throws ParseException {
+    assertEquals(SEPT_1_2014 + 500,
+        WarcImporter.parseWarcDate("2014-09-01T00:00:00.5Z"));
+    assertEquals(SEPT_1_2014 + 123,
+        WarcImporter.parseWarcDate("2014-09-01T00:00:00.123Z"));
+    assertEquals("Precision past ms is truncated", SEPT_1_2014 + 123,
+        WarcImporter.parseWarcDate("2014-09-01T00:00:00.123456789Z"));
+  }
+
+  @Test(expected = ParseException.class)
+  public void testParseWarcDateWithoutZone() throws ParseException {
+    WarcImporter.parseWarcDate("2014-09-01T00:00:00");
+  }
+
+  @Test(expected = ParseException.class)
+  public void testParseInvalidWarcDate() throws ParseException {
+    WarcImporter.parseWarcDate("2014-13-01T00:00:00Z");
+  }
+
+  @Test
+  public void testDechunk() throws IOException {
+    String chunked = "5\r\nHello\r\n7;ext=1\r\n, world\r\n0\r\n\r\n";
+    assertEquals("Hello, world", dechunk(chunked));
+  }
+
+  @Test
+  public void testDechunkHexSizes() throws IOException {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 26; i++) {
+      body.append('a');
+    }
+    assertEquals(body.toString(), dechunk("1a\r\n" + body + "\r\n0\r\n\r\n"));
+  }
+
+  @Test
+  public void testDechunkTruncated() throws IOException {
+    assertEquals("Hello", dechunk("5\r\nHello\r\n"));
+  }
+
+  @Test
+  public void testResumedImportOnlyCountsBytesReadInThisRun()
+      throws Exception {
+    File importDir = folder.newFolder("import");
+    File checkpointDir = folder.newFolder("checkpoints");
+    String committed = record("a") + record("b");
+    String remaining = record("c") + record("d") + record("e");
+    write(new File(importDir, "test.warc"), committed + remaining);
+    write(new File(checkpointDir, "test.warc.checkpoint"), "records=2\n");
+
+    WarcImporter importer = new WarcImporter(newDataset(),
+        importDir.getPath(), checkpointDir.getPath());
+    try {
+      WarcImportProgress progress = importer.submit("test.warc");
+      long deadline = System.currentTimeMillis() + 10000;
+      while (progress.getState() != WarcImportProgress.State.COMPLETED
+          && progress.getState() != WarcImportProgress.State.FAILED
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(WarcImportProgress.State.COMPLETED, progress.getState());
+      assertEquals(2, progress.getResumedFromRecord());
+      assertEquals(3, progress.getRecordsRead());
+      assertEquals("Bytes skipped to resume aren't counted",
+          remaining.length(), progress.getBytesRead());
+      long elapsedMs = progress.getFinishedAt() - progress.getStartedAt();
+      double expectedRate = elapsedMs > 0 ? remaining.length() * 1000.0
+          / elapsedMs : 0;
+      assertEquals(expectedRate, progress.getBytesPerSecond(), 0.001);
+    } finally {
+      importer.shutdown();
+    }
+  }
+
+  /**
+   * A record whose block isn't loaded, so it's skipped without being parsed.
+   */
+  private static String record(String id) {
+    String block = "software: test " + id + "\r\n";
+    return "WARC/1.0\r\nWARC-Type: warcinfo\r\n"
+        + "WARC-Date: 2014-09-01T00:00:00Z\r\nContent-Length: "
+        + block.length() + "\r\n\r\n" + block + "\r\n\r\n";
+  }
+
+  private static void write(File file, String content) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("ISO-8859-1"));
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * A dataset that discards everything written to it.
+   */
+  @SuppressWarnings("unchecked")
+  private static RandomAccessDataset<WebPageSnapshotModel> newDataset() {
+    final Object writer = stub(DatasetWriter.class, null);
+    return (RandomAccessDataset<WebPageSnapshotModel>) stub(
+        RandomAccessDataset.class, writer);
+  }
+
+  private static Object stub(Class<?> type, final Object newWriter) {
+    return Proxy.newProxyInstance(WarcImporterTest.class.getClassLoader(),
+        new Class<?>[] { type }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("newWriter")) {
+              return newWriter;
+            } else if (method.getReturnType() == boolean.class) {
+              return true;
+            }
+            return null;
+          }
+        });
+  }
+
+  private static String dechunk(String chunked) throws IOException {
+    InputStream in = WarcImporter.dechunk(new ByteArrayInputStream(chunked
+        .getBytes("ISO-8859-1")));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1) {
+      out.write(b);
+    }
+    return out.toString("ISO-8859-1");
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2014 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.spring.hbase.example.warc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WarcReaderTest {
+
+  private static final String RESPONSE_BLOCK = "HTTP/1.1 200 OK\r\n"
+      + "Content-Type: text/html\r\n\r\n<html></html>";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReadRecords() throws IOException {
+    File file = writeArchive("test.warc", false,
+        record("warcinfo", null, "software: test\r\n"),
+        record("response", "http://www.example.com/", RESPONSE_BLOCK));
+    WarcReader reader = new WarcReader(file, 1024);
+    try {
+      WarcRecord info = reader.next();
+      assertEquals("warcinfo", info.getType());
+      assertNull("Only response blocks are loaded", info.getBlock());
+
+      WarcRecord response = reader.next();
+      assertEquals("response", response.getType());
+      assertEquals("http://www.example.com/", response.getTargetUri());
+      assertEquals(RESPONSE_BLOCK.length(), response.getContentLength());
+      assertArrayEquals(RESPONSE_BLOCK.getBytes("ISO-8859-1"),
+          response.getBlock());
+
+      assertNull(reader.next());
+      assertEquals(file.length(), reader.getBytesRead());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testHeadersAreCaseInsensitive() throws IOException {
+    File file = writeArchive("test.warc", false,
+        record("response", "http://www.example.com/", RESPONSE_BLOCK));
+    WarcReader reader = new WarcReader(file, 1024);
+    try {
+      WarcRecord record = reader.next();
+      assertEquals("2014-09-01T00:00:00Z", record.getHeader("warc-date"));
+      assertEquals("2014-09-01T00:00:00Z", record.getHeader("WARC-DATE"));
+      assertNull(record.getHeader("WARC-Missing"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testLargeBlocksAreSkipped() throws IOException {
+    File file = writeArchive("test.warc", false,
+        record("response", "http://www.example.com/a", RESPONSE_BLOCK),
+        record("response", "http://www.example.com/b", RESPONSE_BLOCK));
+    WarcReader reader = new WarcReader(file, RESPONSE_BLOCK.length() - 1);
+    try {
+      WarcRecord record = reader.next();
+      assertNull(record.getBlock());
+      assertEquals("The block is skipped, not left in the stream",
+          "http://www.example.com/b", reader.next().getTargetUri());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSkip() throws IOException {
+    File file = writeArchive("test.warc", false,
+        record("response", "http://www.example.com/a", RESPONSE_BLOCK),
+        record("response", "http://www.example.com/b", RESPONSE_BLOCK));
+    WarcReader reader = new WarcReader(file, 1024);
+    try {
+      assertTrue(reader.skip());
+      assertEquals("http://www.example.com/b", reader.next().getTargetUri());
+      assertFalse(reader.skip());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testGzipArchive() throws IOException {
+    File file = writeArchive("test.warc.gz", true,
+        record("response", "http://www.example.com/", RESPONSE_BLOCK));
+    WarcReader reader = new WarcReader(file, 1024);
+    try {
+      assertEquals("http://www.example.com/", reader.next().getTargetUri());
+      assertNull(reader.next());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingContentLength() throws IOException {
+    File file = writeArchive("test.warc", false,
+        "WARC/1.0\r\nWARC-Type: response\r\n\r\n");
+    WarcReader reader = new WarcReader(file, 1024);
+    try {
+      reader.next();
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedRecord() throws IOException {
+    String record = record("response", "http://www.example.com/",
+        RESPONSE_BLOCK);
+    File file = writeArchive("test.warc", false,
+        record.substring(0, record.length() - 10));
+    WarcReader reader = new WarcReader(file, 1024);
+    try {
+      reader.next();
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static String record(String type, String uri, String block) {
+    StringBuilder record = new StringBuilder();
+    record.append("WARC/1.0\r\n");
+    record.append("WARC-Type: ").append(type).append("\r\n");
+    if (uri != null) {
+      record.append("WARC-Target-URI: ").append(uri).append("\r\n");
+    }
+    record.append("WARC-Date: 2014-09-01T00:00:00Z\r\n");
+    record.append("Content-Length: ").append(block.length()).append("\r\n");
+    record.append("\r\n").append(block).append("\r\n\r\n");
+    return record.toString();
+  }
+
+  private File writeArchive(String name, boolean gzip, String... records)
+      throws IOException {
+    File file = new File(folder.getRoot(), name);
+    OutputStream out = new FileOutputStream(file);
+    if (gzip) {
+      out = new GZIPOutputStream(out);
+    }
+    try {
+      for (String record : records) {
+        out.write(record.getBytes("ISO-8859-1"));
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+}